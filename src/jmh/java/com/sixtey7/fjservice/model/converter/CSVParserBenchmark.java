@@ -0,0 +1,162 @@
+package com.sixtey7.fjservice.model.converter;
+
+import com.sixtey7.fjservice.model.Transaction;
+import com.sixtey7.fjservice.utils.MoneyHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the rows per second of the tokenizing {@link CSVParser} against the split based parsing
+ * it replaced.  Run with ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CSVParserBenchmark {
+
+    /**
+     * Logger used by the split based parsing, as the old parser had one
+     */
+    private static final Logger LOGGER = LogManager.getLogger(CSVParserBenchmark.class);
+
+    /**
+     * Number of transaction rows in the generated data
+     */
+    private static final int ROWS = 100_000;
+
+    /**
+     * Names of the accounts the generated transactions belong to
+     */
+    private static final String[] ACCOUNT_NAMES = {"Checking", "Savings", "Credit Card", "Cash"};
+
+    /**
+     * Generated transaction section, including the header line
+     */
+    private String csv;
+
+    /**
+     * Map of account name to id used to resolve the transactions
+     */
+    private Map<String, UUID> accountNameMap;
+
+    /**
+     * Parser under test
+     */
+    private CSVParser parser;
+
+    /**
+     * Generates a couple of years of transactions spread over a handful of accounts
+     */
+    @Setup
+    public void setup() {
+        accountNameMap = new HashMap<>();
+        for (String name : ACCOUNT_NAMES) {
+            accountNameMap.put(name, UUID.randomUUID());
+        }
+
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2019, 1, 1);
+        Transaction.TransType[] types = Transaction.TransType.values();
+
+        StringBuilder builder = new StringBuilder("Name,Debit,Credit,Account,Date,Type,Notes\n");
+        for (int row = 0; row < ROWS; row++) {
+            long cents = random.nextInt(500_000);
+            builder.append("Transaction ").append(row % 250).append(',');
+            if (random.nextBoolean()) {
+                builder.append(MoneyHelper.format(cents)).append(",,");
+            }
+            else {
+                builder.append(',').append(MoneyHelper.format(cents)).append(',');
+            }
+            builder.append(ACCOUNT_NAMES[row % ACCOUNT_NAMES.length]).append(',');
+            builder.append(start.plusDays(random.nextInt(730))).append(',');
+            builder.append(types[random.nextInt(types.length)]).append(',');
+            builder.append(row % 10 == 0 ? "some notes" : "").append('\n');
+        }
+        csv = builder.toString();
+
+        parser = new CSVParser();
+    }
+
+    /**
+     * Parses the rows with the tokenizing parser
+     * @return {@link List} of parsed {@link Transaction}
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Transaction> tokenizer() {
+        return parser.parseTransactions(csv, accountNameMap);
+    }
+
+    /**
+     * Parses the rows the way the parser used to, splitting the text and every line
+     * @return {@link List} of parsed {@link Transaction}
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Transaction> split() {
+        List<Transaction> returnList = new ArrayList<>();
+
+        String[] allLines = csv.split("\\n");
+        for (int lineCounter = 1; lineCounter < allLines.length; lineCounter++) {
+            returnList.add(splitLine(allLines[lineCounter]));
+        }
+
+        return returnList;
+    }
+
+    /**
+     * Parses a single line the way the parser used to
+     * @param csvLine the line to parse
+     * @return {@link Transaction} created from the line
+     */
+    private Transaction splitLine(String csvLine) {
+        String[] lineData = csvLine.split(",", 7);
+
+        if (lineData.length != 7) {
+            throw new IllegalArgumentException("Incorrect number of lines provided, expected 7 got " + lineData.length);
+        }
+
+        long amount = 0;
+        if (!lineData[1].equals("")) {
+            amount = -MoneyHelper.parseCents(lineData[1], 0, lineData[1].length());
+        }
+        else if (!lineData[2].equals("")) {
+            amount = MoneyHelper.parseCents(lineData[2], 0, lineData[2].length());
+        }
+
+        LocalDate transDate = LocalDate.now();
+        if (!lineData[4].equals("")) {
+            transDate = LocalDate.parse(lineData[4]);
+        }
+
+        Transaction.TransType type = Transaction.TransType.FUTURE;
+        if (!lineData[5].equals("")) {
+            type = Transaction.TransType.valueOf(lineData[5]);
+        }
+
+        Transaction newTrans = new Transaction(lineData[0], transDate, amount, accountNameMap.get(lineData[3]), lineData[6], type);
+
+        // the old parser built the debug message whether or not debug was on
+        LOGGER.debug(newTrans.toString());
+
+        return newTrans;
+    }
+}
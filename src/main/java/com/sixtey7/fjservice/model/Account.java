@@ -1,16 +1,23 @@
 package com.sixtey7.fjservice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.sixtey7.fjservice.utils.MoneyHelper;
+
+import javax.json.bind.annotation.JsonbTransient;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
 import java.util.UUID;
 
 /**
- * Entity class used for account objects
+ * Entity class used for account objects, held in the second-level cache as the table is small and rarely changes
  */
 @Entity
+@Cacheable
 @Table(name = "accounts")
 public class Account {
     @Id
@@ -22,8 +29,11 @@ public class Account {
     @Column(name="name")
     private String name;
 
+    /**
+     * Balance of the account in cents
+     */
     @Column(name="amount")
-    private Float amount;
+    private long amount;
 
     @Column(name="notes")
     private String notes;
@@ -38,8 +48,9 @@ public class Account {
 
     /**
      * Constructor
+     * @param amount the balance in cents
      */
-    public Account(String name, float amount, String notes, boolean dynamic) {
+    public Account(String name, long amount, String notes, boolean dynamic) {
         this.id = UUID.randomUUID();
         this.name = name;
         this.amount = amount;
@@ -68,11 +79,31 @@ public class Account {
         this.name = name;
     }
 
-    public Float getAmount() {
+    /**
+     * Returns the balance in dollars, which is what clients send and receive
+     * @return the balance in dollars
+     */
+    public BigDecimal getAmount() {
+        return MoneyHelper.toDecimal(amount);
+    }
+
+    /**
+     * Sets the balance from a value in dollars, rounding to the nearest cent
+     * @param amount the balance in dollars (null is treated as 0)
+     */
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount == null ? 0 : MoneyHelper.toCents(amount);
+    }
+
+    @JsonIgnore
+    @JsonbTransient
+    public long getAmountCents() {
         return amount;
     }
 
-    public void setAmount(Float amount) {
+    @JsonIgnore
+    @JsonbTransient
+    public void setAmountCents(long amount) {
         this.amount = amount;
     }
 
@@ -112,7 +143,7 @@ public class Account {
 
         //Amount
         sb.append("Amount: ");
-        sb.append(this.amount);
+        sb.append(MoneyHelper.format(this.amount));
         sb.append("\n");
 
         //Dynamic
@@ -1,9 +1,13 @@
 package com.sixtey7.fjservice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.sixtey7.fjservice.model.converter.LocalDateSerializer;
+import com.sixtey7.fjservice.utils.MoneyHelper;
+import javax.json.bind.annotation.JsonbTransient;
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.UUID;
 
@@ -30,8 +34,11 @@ public class Transaction implements Comparable<Transaction> {
     @JsonSerialize(using = LocalDateSerializer.class)
     private LocalDate date;
 
+    /**
+     * Amount of the transaction in cents
+     */
     @Column(name="amount")
-    private Float amount;
+    private long amount;
 
     @Column(name="type")
     private TransType type;
@@ -41,7 +48,9 @@ public class Transaction implements Comparable<Transaction> {
 
     public Transaction() { }
 
-    public Transaction(final String name, final LocalDate date, final float amount, final UUID accountId) {
+    // amounts passed to the constructors below are in cents
+
+    public Transaction(final String name, final LocalDate date, final long amount, final UUID accountId) {
         this.id = UUID.randomUUID();
         this.name = name;
         this.date = date;
@@ -51,7 +60,7 @@ public class Transaction implements Comparable<Transaction> {
         this.type = TransType.FUTURE;
     }
 
-    public Transaction(final String name, final LocalDate date, final float amount, final UUID accountId, final String notes) {
+    public Transaction(final String name, final LocalDate date, final long amount, final UUID accountId, final String notes) {
         this.id = UUID.randomUUID();
         this.name = name;
         this.date = date;
@@ -62,7 +71,7 @@ public class Transaction implements Comparable<Transaction> {
         this.type = TransType.FUTURE;
     }
 
-    public Transaction(final String name, final LocalDate date, final float amount, final UUID accountId, final String notes, TransType type) {
+    public Transaction(final String name, final LocalDate date, final long amount, final UUID accountId, final String notes, TransType type) {
         this.id = UUID.randomUUID();
         this.name = name;
         this.date = date;
@@ -104,11 +113,31 @@ public class Transaction implements Comparable<Transaction> {
         this.date = date;
     }
 
-    public Float getAmount() {
+    /**
+     * Returns the amount in dollars, which is what clients send and receive
+     * @return the amount in dollars
+     */
+    public BigDecimal getAmount() {
+        return MoneyHelper.toDecimal(amount);
+    }
+
+    /**
+     * Sets the amount from a value in dollars, rounding to the nearest cent
+     * @param amount the amount in dollars (null is treated as 0)
+     */
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount == null ? 0 : MoneyHelper.toCents(amount);
+    }
+
+    @JsonIgnore
+    @JsonbTransient
+    public long getAmountCents() {
         return amount;
     }
 
-    public void setAmount(Float amount) {
+    @JsonIgnore
+    @JsonbTransient
+    public void setAmountCents(long amount) {
         this.amount = amount;
     }
 
@@ -174,7 +203,7 @@ public class Transaction implements Comparable<Transaction> {
 
         //Amount
         sb.append("Amount: ");
-        sb.append(this.amount);
+        sb.append(MoneyHelper.format(this.amount));
         sb.append("\n");
 
         //Type
@@ -4,14 +4,16 @@ import com.sixtey7.fjservice.model.Account;
 import com.sixtey7.fjservice.model.Transaction;
 import com.sixtey7.fjservice.model.db.AccountDAO;
 import com.sixtey7.fjservice.model.db.TransactionDAO;
-import com.sixtey7.fjservice.utils.AccountHelper;
+import com.sixtey7.fjservice.utils.AccountIndex;
+import com.sixtey7.fjservice.utils.MoneyHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 
 /**
  * Class used to generate a CSV File based on the transaction data
@@ -31,10 +33,10 @@ public class CSVGenerator {
     private AccountDAO acctDao;
 
     /**
-     * Used to massage account data
+     * Used to look up account names
      */
     @Inject
-    private AccountHelper acctHelper;
+    private AccountIndex accountIndex;
 
     /**
      * Used to get transaction data
@@ -43,159 +45,169 @@ public class CSVGenerator {
     private TransactionDAO txDao;
 
 
-    public String generateStringForAllData() {
-        List<Account> allAccounts = acctDao.getAllAccounts();
-        List<Transaction> allTxs = txDao.getAllTransactions();
-
-        Map<String, String> acctNameMap = acctHelper.buildIdNameMap(allAccounts);
-
-        StringBuilder csvFile = new StringBuilder();
+    /**
+     * Writes all of the account and transaction data in CSV Format to the provided {@link Writer},
+     * streaming the transactions straight from the database
+     * @param writer {@link Writer} to write the data to
+     * @throws IOException if the data could not be written
+     */
+    public void writeCSVForAllData(Writer writer) throws IOException {
+        LOGGER.info("Writing csv for all data");
 
         // All Accounts
-        csvFile.append("~!~,Accounts");
-        csvFile.append("\n");
-        csvFile.append(buildStringBuilderForAccounts(allAccounts));
+        writer.append("~!~,Accounts");
+        writer.append("\n");
+        writeCSVForAllAccounts(writer);
 
         // All Txs
-        csvFile.append("~!~,Transactions");
-        csvFile.append("\n");
-        csvFile.append(buildStringBuilderForAllTxs(allTxs, acctNameMap));
-
-        return csvFile.toString();
-
+        writer.append("~!~,Transactions");
+        writer.append("\n");
+        writeCSVForAllTxs(writer);
     }
+
     /**
-     *
-     * Returns a string that captures all of the account data in CSV Format
-     * @return {@link String} holding all {@link Account} data
+     * Writes all of the account data in CSV Format to the provided {@link Writer}
+     * @param writer {@link Writer} to write the data to
+     * @throws IOException if the data could not be written
      */
-    public String generateCSVForAllAccounts() {
-        LOGGER.info("Generating csv for all accounts");
-        List<Account> allAccounts = acctDao.getAllAccounts();
-
+    public void writeCSVForAllAccounts(Writer writer) throws IOException {
+        LOGGER.info("Writing csv for all accounts");
 
-        return buildStringBuilderForAccounts(allAccounts).toString();
+        try {
+            acctDao.streamAllAccounts(acct -> writeCSVLineFromAccount(writer, acct));
+        }
+        catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
     }
 
     /**
-     * Returns a string that captures all of the data in CSV Format
-     * @return {@link String} holding all {@link Transaction} data
+     * Writes all of the transaction data in CSV Format to the provided {@link Writer}
+     * @param writer {@link Writer} to write the data to
+     * @throws IOException if the data could not be written
      */
-    public String generateCSVForAllTxs() {
-        LOGGER.info("Generating csv for all transactions");
-        List<Transaction> allTxs = txDao.getAllTransactions();
-
-        //Get all of the accounts for reference
-        List<Account> allAccounts = acctDao.getAllAccounts();
-        Map<String, String> acctNameMap = acctHelper.buildIdNameMap(allAccounts);
-
-        LOGGER.debug("found {} transactions", allTxs.size());
-
-        return buildStringBuilderForAllTxs(allTxs, acctNameMap).toString();
-
+    public void writeCSVForAllTxs(Writer writer) throws IOException {
+        LOGGER.info("Writing csv for all transactions");
+
+        try {
+            txDao.streamAllTransactions(tx -> {
+                String acctName = accountIndex.getName(tx.getAccountId());
+                writeCSVLineFromTransaction(writer, tx, acctName != null ? acctName : "");
+            });
+        }
+        catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
     }
 
-    private StringBuilder buildStringBuilderForAccounts(List<Account> allAccounts) {
-        StringBuilder csvFile = new StringBuilder();
-        for (Account acct : allAccounts) {
-            csvFile.append(generateCSVLineFromAccount(acct));
-        }
+    /**
+     * Writes the line for a single {@link Transaction}
+     * @param writer {@link Writer} to write the line to
+     * @param tx {@link Transaction} to write the line for
+     * @param acctName {@link String} name of the parent account
+     */
+    private void writeCSVLineFromTransaction(Writer writer, Transaction tx, String acctName) {
+        LOGGER.debug("Writing a line for {}", tx.getId());
 
-        return csvFile;
-    }
+        try {
+            appendField(writer, tx.getName());
+            writer.append(",");
 
-    private StringBuilder buildStringBuilderForAllTxs(List<Transaction> allTxs, Map<String, String> acctNameMap) {
-        StringBuilder csvFile = new StringBuilder();
-        for (Transaction tx : allTxs) {
-            if (acctNameMap.get(tx.getAccountId().toString()) != null) {
-                csvFile.append(generateCSVLineFromTransaction(tx, acctNameMap.get(tx.getAccountId().toString())));
+            if (tx.getAmountCents() < 0) {
+                writer.append(MoneyHelper.format(-tx.getAmountCents()));
+                writer.append(",");
             }
             else {
-                csvFile.append(generateCSVLineFromTransaction(tx, ""));
+                writer.append(",");
+                writer.append(MoneyHelper.format(tx.getAmountCents()));
             }
-        }
+            writer.append(",");
 
-        return csvFile;
+            appendField(writer, acctName);
+            writer.append(",");
 
-    }
+            if (tx.getDate() != null) {
+                writer.append(tx.getDate().toString());
+            }
+            writer.append(",");
 
-    /**
-     * Builds a {@link StringBuilder} for a single {@link Transaction}
-     * @param tx {@link Transaction} to build the line for
-     * @param acctName {@link String} name of the parent account
-     * @return {@link StringBuilder} containing the data
-     */
-    private StringBuilder generateCSVLineFromTransaction(Transaction tx, String acctName) {
-        LOGGER.debug("Building a line for {}", tx.getId());
-        StringBuilder sb = new StringBuilder();
+            writer.append(tx.getType().toString());
+            writer.append(",");
 
-        sb.append(tx.getName());
-        sb.append(",");
+            appendField(writer, tx.getNotes());
 
-        if (tx.getAmount() < 0) {
-            sb.append((tx.getAmount() * -1));
-            sb.append(",");
+            writer.append("\n");
         }
-        else {
-            sb.append(",");
-            sb.append(tx.getAmount());
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
         }
-        sb.append(",");
+    }
 
-        sb.append(acctName);
-        sb.append(",");
+    /**
+     * Writes the line for a single {@link Account}
+     * @param writer {@link Writer} to write the line to
+     * @param acct {@link Account} to write the line for
+     */
+    private void writeCSVLineFromAccount(Writer writer, Account acct) {
+        LOGGER.debug("Writing a line for {}", acct.getId());
 
-        sb.append(tx);
-        sb.append(",");
+        try {
+            appendField(writer, acct.getName());
+            writer.append(",");
 
-        sb.append(tx.getType().toString());
-        sb.append(",");
+            if (acct.getAmountCents() < 0) {
+                writer.append(MoneyHelper.format(-acct.getAmountCents()));
+                writer.append(",");
+            }
+            else {
+                writer.append(",");
+                writer.append(MoneyHelper.format(acct.getAmountCents()));
+            }
+            writer.append(",");
 
-        sb.append(tx.getNotes());
+            appendField(writer, acct.getNotes());
+            writer.append(",");
 
-        sb.append("\n");
+            if (acct.getDynamic()) {
+                writer.append(CSVParser.DYNAMIC);
+            }
+            else {
+                writer.append(CSVParser.CALCULATED);
+            }
+            writer.append(",");
 
-        return sb;
+            writer.append("\n");
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
     }
 
     /**
-     * Builds a {@link StringBuilder} for a single {@link Account}
-     * @param acct {@link Account} to build the line for
-     * @return {@link StringBuilder} containing the data
+     * Writes a free text field, wrapping it in quotes (and doubling any quotes inside it) if it holds
+     * a character that would otherwise break up the line
+     * @param writer {@link Writer} to write the field to
+     * @param value {@link String} value of the field (null is written as an empty field)
+     * @throws IOException if the field could not be written
      */
-    private StringBuilder generateCSVLineFromAccount(Account acct) {
-        LOGGER.debug("Building a line for {}", acct.getId());
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(acct.getName());
-        sb.append(",");
-
-        if (acct.getAmount() < 0) {
-            sb.append((acct.getAmount() * -1));
-            sb.append(",");
-        }
-        else {
-            sb.append(",");
-            sb.append(acct.getAmount());
+    private void appendField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
         }
-        sb.append(",");
-
-        sb.append(acct.getNotes());
-        sb.append(",");
 
-        if (acct.getDynamic()) {
-            sb.append("Dynamic");
+        boolean needsQuotes = false;
+        for (int pos = 0; pos < value.length() && !needsQuotes; pos++) {
+            char c = value.charAt(pos);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
         }
-        else {
-            sb.append("Calculated");
-        }
-        sb.append(",");
-
-        sb.append("\n");
-
-
-        return sb;
 
+        if (!needsQuotes) {
+            writer.append(value);
+            return;
+        }
 
+        writer.append('"');
+        writer.append(value.replace("\"", "\"\""));
+        writer.append('"');
     }
 }
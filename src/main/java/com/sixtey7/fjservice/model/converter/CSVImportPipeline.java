@@ -0,0 +1,253 @@
+package com.sixtey7.fjservice.model.converter;
+
+import com.sixtey7.fjservice.utils.ImportProgress;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Parses the records of a CSV section in chunks on a pool while the calling thread carries on
+ * reading and hands the parsed chunks to the sink, so reading, parsing and storing overlap.  Only
+ * a bounded number of chunks are in flight at a time, so a slow sink holds the reading back rather
+ * than letting parsed rows pile up.  Chunks reach the sink in file order.
+ * <p>
+ * Rows that fail to parse don't stop the import straight away.  Every error is recorded against
+ * the line it came from, and once the section has been read they are all reported together
+ */
+final class CSVImportPipeline {
+
+    /**
+     * Logger for the class
+     */
+    private static final Logger LOGGER = LogManager.getLogger(CSVImportPipeline.class);
+
+    /**
+     * Most errors included in the message, so a file full of bad rows doesn't produce a huge response
+     */
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    /**
+     * Executor the chunks are parsed on
+     */
+    private final Executor executor;
+
+    /**
+     * Number of records in each chunk
+     */
+    private final int chunkSize;
+
+    /**
+     * Most chunks that can be in flight at a time
+     */
+    private final int maxInFlight;
+
+    /**
+     * Constructor
+     * @param executor {@link Executor} to parse the chunks on
+     * @param chunkSize number of records in each chunk
+     * @param maxInFlight most chunks that can be in flight at a time
+     */
+    CSVImportPipeline(Executor executor, int chunkSize, int maxInFlight) {
+        this.executor = executor;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Parses the records up to the end of the data, or up to a record that starts the next section
+     * (which is pushed back onto the reader).  Blank records are skipped
+     * @param records {@link CSVRecordReader} to read the records from
+     * @param isBoundary {@link Predicate} matching the record that starts the next section
+     * @param rowParser {@link BiFunction} that turns a record into a row using the provided {@link CSVTokenizer}
+     * @param sink {@link Consumer} to hand each chunk of parsed rows to
+     * @param progress {@link ImportProgress} to report to
+     * @param <T> type of row being parsed
+     * @return number of rows parsed
+     * @throws IllegalArgumentException listing the lines that couldn't be parsed
+     */
+    <T> long parse(CSVRecordReader records, Predicate<String> isBoundary, BiFunction<CSVTokenizer, String, T> rowParser,
+                   Consumer<List<T>> sink, ImportProgress progress) {
+        Deque<CompletableFuture<Chunk<T>>> inFlight = new ArrayDeque<>();
+        List<LineError> errors = new ArrayList<>();
+        long rowCount = 0;
+
+        List<String> lines = new ArrayList<>(chunkSize);
+        int[] lineNumbers = new int[chunkSize];
+
+        String record;
+        while ((record = records.next()) != null) {
+            if (isBoundary.test(record)) {
+                records.pushBack(record);
+                break;
+            }
+            if (record.isEmpty()) {
+                continue;
+            }
+
+            progress.checkCancelled();
+
+            lineNumbers[lines.size()] = records.getLineNumber();
+            lines.add(record);
+
+            if (lines.size() == chunkSize) {
+                if (inFlight.size() >= maxInFlight) {
+                    rowCount += drain(inFlight.removeFirst(), sink, errors);
+                }
+                inFlight.addLast(submit(lines, lineNumbers, rowParser, progress));
+
+                lines = new ArrayList<>(chunkSize);
+                lineNumbers = new int[chunkSize];
+            }
+        }
+
+        if (!lines.isEmpty()) {
+            inFlight.addLast(submit(lines, Arrays.copyOf(lineNumbers, lines.size()), rowParser, progress));
+        }
+        while (!inFlight.isEmpty()) {
+            rowCount += drain(inFlight.removeFirst(), sink, errors);
+        }
+
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(describe(errors));
+        }
+
+        return rowCount;
+    }
+
+    /**
+     * Queues a chunk of records to be parsed
+     * @param lines {@link List} of records in the chunk
+     * @param lineNumbers line each record started on
+     * @param rowParser {@link BiFunction} that turns a record into a row
+     * @param progress {@link ImportProgress} to report to
+     * @param <T> type of row being parsed
+     * @return {@link CompletableFuture} holding the parsed {@link Chunk}
+     */
+    private <T> CompletableFuture<Chunk<T>> submit(List<String> lines, int[] lineNumbers, BiFunction<CSVTokenizer, String, T> rowParser,
+                                                   ImportProgress progress) {
+        return CompletableFuture.supplyAsync(() -> {
+            // tokenizers aren't thread safe, so each chunk gets its own
+            CSVTokenizer tokenizer = new CSVTokenizer();
+            Chunk<T> chunk = new Chunk<>(lines.size());
+
+            for (int i = 0; i < lines.size(); i++) {
+                try {
+                    chunk.rows.add(rowParser.apply(tokenizer, lines.get(i)));
+                }
+                catch (RuntimeException re) {
+                    chunk.errors.add(new LineError(lineNumbers[i], re.getMessage()));
+                }
+            }
+
+            progress.addParsed(chunk.rows.size());
+            return chunk;
+        }, executor);
+    }
+
+    /**
+     * Waits for a chunk to be parsed and hands its rows to the sink.  Once any row has failed, the
+     * remaining chunks are only checked for errors, as the import is going to fail anyway
+     * @param future {@link CompletableFuture} holding the parsed {@link Chunk}
+     * @param sink {@link Consumer} to hand the parsed rows to
+     * @param errors {@link List} of {@link LineError} to add the chunk's errors to
+     * @param <T> type of row being parsed
+     * @return number of rows parsed in the chunk
+     */
+    private <T> long drain(CompletableFuture<Chunk<T>> future, Consumer<List<T>> sink, List<LineError> errors) {
+        Chunk<T> chunk = future.join();
+
+        errors.addAll(chunk.errors);
+        if (errors.isEmpty() && !chunk.rows.isEmpty()) {
+            sink.accept(chunk.rows);
+        }
+
+        return chunk.rows.size();
+    }
+
+    /**
+     * Builds the message listing the lines that failed
+     * @param errors {@link List} of {@link LineError}
+     * @return {@link String} describing the errors
+     */
+    private static String describe(List<LineError> errors) {
+        errors.sort((first, second) -> Integer.compare(first.lineNumber, second.lineNumber));
+        LOGGER.error("Failed to parse {} rows, first on line {}", errors.size(), errors.get(0).lineNumber);
+
+        StringBuilder message = new StringBuilder();
+        message.append(errors.size()).append(errors.size() == 1 ? " row" : " rows").append(" could not be parsed");
+        for (LineError error : errors.subList(0, Math.min(errors.size(), MAX_REPORTED_ERRORS))) {
+            message.append("\n").append(error);
+        }
+        if (errors.size() > MAX_REPORTED_ERRORS) {
+            message.append("\n...and ").append(errors.size() - MAX_REPORTED_ERRORS).append(" more");
+        }
+
+        return message.toString();
+    }
+
+    /**
+     * Rows parsed from a chunk of records, along with any errors
+     * @param <T> type of row
+     */
+    private static class Chunk<T> {
+
+        /**
+         * Rows that parsed
+         */
+        final List<T> rows;
+
+        /**
+         * Records that didn't parse
+         */
+        final List<LineError> errors = new ArrayList<>();
+
+        /**
+         * Constructor
+         * @param size number of records in the chunk
+         */
+        Chunk(int size) {
+            this.rows = new ArrayList<>(size);
+        }
+    }
+
+    /**
+     * A record that failed to parse
+     */
+    private static class LineError {
+
+        /**
+         * Line the record started on
+         */
+        final int lineNumber;
+
+        /**
+         * Why the record failed
+         */
+        final String message;
+
+        /**
+         * Constructor
+         * @param lineNumber line the record started on
+         * @param message why the record failed
+         */
+        LineError(int lineNumber, String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + lineNumber + ": " + message;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.sixtey7.fjservice.model.converter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Fork-join pool the CSV imports parse their chunks of lines on, kept apart from the common pool
+ * so that a large import doesn't hold up the parallel streams used elsewhere
+ */
+@ApplicationScoped
+public class CSVParsePool {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(CSVParsePool.class);
+
+    /**
+     * Number of threads to parse on (0 to use one per core)
+     */
+    @ConfigProperty(name = "fjservice.import.parse-threads", defaultValue = "0")
+    int parseThreads;
+
+    /**
+     * Most chunks that can be parsed or waiting to be stored at a time for each import, which is
+     * what stops the parsing from running too far ahead of the database
+     */
+    @ConfigProperty(name = "fjservice.import.chunks-in-flight", defaultValue = "8")
+    int chunksInFlight;
+
+    /**
+     * Pool the chunks are parsed on
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Builds the pool once the configuration has been injected
+     */
+    @PostConstruct
+    void init() {
+        int threads = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+
+        LOGGER.info("Parsing CSV imports on {} threads with {} chunks in flight", threads, chunksInFlight);
+    }
+
+    /**
+     * Stops the pool when the application shuts down
+     */
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getChunksInFlight() {
+        return chunksInFlight;
+    }
+}
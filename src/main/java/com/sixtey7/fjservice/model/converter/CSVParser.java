@@ -3,20 +3,37 @@ package com.sixtey7.fjservice.model.converter;
 import com.sixtey7.fjservice.model.Account;
 import com.sixtey7.fjservice.model.Transaction;
 import com.sixtey7.fjservice.model.db.AccountDAO;
-import com.sixtey7.fjservice.model.db.TransactionDAO;
+import com.sixtey7.fjservice.model.db.BatchResult;
+import com.sixtey7.fjservice.model.db.BulkLoader;
+import com.sixtey7.fjservice.model.db.LoadMode;
+import com.sixtey7.fjservice.model.db.StagingLoader;
+import com.sixtey7.fjservice.model.transport.ImportSummary;
 import com.sixtey7.fjservice.model.transport.TxUpdate;
 import com.sixtey7.fjservice.utils.AccountHelper;
-import com.sixtey7.fjservice.utils.TransHelper;
+import com.sixtey7.fjservice.utils.AccountIndex;
+import com.sixtey7.fjservice.utils.ImportProgress;
+import com.sixtey7.fjservice.utils.TxTimeoutHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
 
 /**
- * Class used to parse a generated CSV File
+ * Class used to parse a generated CSV File.  The data is read a line at a time and parsed in chunks
+ * on the {@link CSVParsePool} while earlier chunks are handed on, so an import only holds a few
+ * batches of transactions in memory rather than the whole file
  */
 @Dependent
 public class CSVParser {
@@ -26,6 +43,31 @@ public class CSVParser {
      */
     private static final Logger LOGGER = LogManager.getLogger(CSVParser.class);
 
+    /**
+     * Marker at the start of the line that opens each section of a full export
+     */
+    private static final String SECTION_MARKER = "~!~";
+
+    /**
+     * Type written for accounts whose balance is calculated from their transactions
+     */
+    static final String CALCULATED = "Calculated";
+
+    /**
+     * Type written for accounts whose balance is entered by hand
+     */
+    static final String DYNAMIC = "Dynamic";
+
+    /**
+     * Transaction types, looked up once rather than on every line
+     */
+    private static final Transaction.TransType[] TRANS_TYPES = Transaction.TransType.values();
+
+    /**
+     * Chunks in flight when the parser has been created outside of the container
+     */
+    private static final int DEFAULT_CHUNKS_IN_FLIGHT = 8;
+
     /**
      * Used to interact with account data
      */
@@ -33,44 +75,78 @@ public class CSVParser {
     private AccountDAO acctDao;
 
     /**
-     * Used to massage account data
+     * Used to build the account name map for the transactions
      */
     @Inject
     private AccountHelper acctHelper;
 
     /**
-     * Used to interact with transaction data
+     * Used to resolve account names for existing accounts
      */
     @Inject
-    private TransactionDAO txDao;
+    private AccountIndex accountIndex;
 
     /**
-     * Used to massage tx data
+     * Used to store parsed rows in bulk
      */
     @Inject
-    private TransHelper txHelper;
+    private BulkLoader bulkLoader;
 
     /**
-     * Clears the database and then parses and stores in the database all of
-     * the {@link Transaction} and {@link Account} from the provided
-     * {@link String} from a CSV File
-     * @param textFromCSV {@link String} containing the input from a CSV File
-     * @return {@link TxUpdate} containing the items that have been stored in the database
+     * Used to replace the existing data in one go
      */
-    public TxUpdate parseAndClearAndStoreAllFromCSV(String textFromCSV) {
-        //Delete everything from the database
-        txDao.deleteAllTransactions();
-        acctDao.deleteAllAccounts();
+    @Inject
+    private StagingLoader stagingLoader;
+
+    /**
+     * Used to give the staging transaction the import timeout
+     */
+    @Inject
+    private TxTimeoutHelper txTimeoutHelper;
 
-        //Store everything in the database
-        TxUpdate updateFromCSV = parseAndStoreAllFromCSV(textFromCSV);
+    /**
+     * Pool the rows are parsed on
+     */
+    @Inject
+    private CSVParsePool parsePool;
+
+    /**
+     * Number of parsed rows handed on at a time
+     */
+    @ConfigProperty(name = "fjservice.import.batch-size", defaultValue = "1000")
+    int batchSize = 1000;
+
+    /**
+     * Timeout in seconds for the transaction a replacing import runs in.  Reading, parsing and staging the
+     * whole upload all happen inside it, which can take far longer than the default timeout
+     */
+    @ConfigProperty(name = "fjservice.import.transaction-timeout", defaultValue = "3600")
+    int transactionTimeout = 3600;
 
-        // Update all of the balance for each of the accounts
-        for (Account thisAccount : updateFromCSV.getAccounts()) {
-            acctHelper.updateBalanceForAccount(thisAccount.getId());
+    /**
+     * Replaces everything in the database with all of the {@link Transaction} and {@link Account}
+     * from the provided CSV data.  The rows are staged as they are read, and the old data stays
+     * visible until the new data has been swapped in
+     * @param csvData {@link InputStream} containing the CSV File
+     * @param mode {@link LoadMode} used to stage the parsed rows
+     * @param progress {@link ImportProgress} to report to
+     * @return {@link ImportSummary} containing the accounts and the number of transactions stored
+     */
+    public ImportSummary parseAndClearAndStoreAllFromCSV(InputStream csvData, LoadMode mode, ImportProgress progress) {
+        ImportSummary summary = new ImportSummary();
+
+        Map<UUID, Long> balances = txTimeoutHelper.callWithTimeout(transactionTimeout, () -> stagingLoader.replaceAll(mode, progress,
+                sink -> streamAll(openReader(csvData), summary, progress, sink::addAccounts, sink::addTransactions)));
+
+        // pass back the balances calculated as part of the swap
+        for (Account thisAccount : summary.getAccounts()) {
+            if (balances.containsKey(thisAccount.getId())) {
+                thisAccount.setAmountCents(balances.get(thisAccount.getId()));
+            }
         }
 
-        return updateFromCSV;
+        summary.setSuccess(true);
+        return summary;
     }
 
 
@@ -78,14 +154,17 @@ public class CSVParser {
      * Parses and stores in the database all of the {@link Transaction} and
      * {@link Account} from the provided {@link String} from CSV File
      * @param textFromCSV Input from a CSV File
+     * @param mode {@link LoadMode} used to store the parsed rows
      * @return {@link TxUpdate} of the items that have been stored in the database
      */
-    public TxUpdate parseAndStoreAllFromCSV(String textFromCSV) {
+    public TxUpdate parseAndStoreAllFromCSV(String textFromCSV, LoadMode mode) {
         TxUpdate updatesFromCSV = parseAllFromCSV(textFromCSV);
 
         //store everything in the database
-        acctDao.addAllAccounts(updatesFromCSV.getAccounts());
-        txDao.addAllTransactions(updatesFromCSV.getTransactions());
+        BatchResult result = bulkLoader.storeAll(updatesFromCSV.getAccounts(), updatesFromCSV.getTransactions(), mode);
+
+        logFailures("row", result);
+        updatesFromCSV.setSuccess(result.isSuccess());
 
         return updatesFromCSV;
     }
@@ -93,51 +172,68 @@ public class CSVParser {
     /**
      * Clears the {@link Account} database and then parses and stores in the database all of the
      * accounts in the provided CSV
-     * @param textFromCSV Input from the CSV File
+     * @param csvData {@link InputStream} containing the CSV File
+     * @param progress {@link ImportProgress} to report to
      * @return {@link List} of the parsed {@link Account}
      */
-    public List<Account> parseAndClearAndStoreAccountFromCSV(String textFromCSV) {
+    public List<Account> parseAndClearAndStoreAccountFromCSV(InputStream csvData, ImportProgress progress) {
         acctDao.deleteAllAccounts();
 
-        return parseAndStoreAccountFromCSV(textFromCSV);
+        return parseAndStoreAccountFromCSV(csvData, progress);
     }
 
     /**
      * Parses and stores in the database all of the {@link Account} from the CSV File
-     * @param textFromCSV Input from the CSV File
+     * @param csvData {@link InputStream} containing the CSV File
+     * @param progress {@link ImportProgress} to report to
      * @return {@link List} of the parsed {@link Account}
      */
-    public List<Account> parseAndStoreAccountFromCSV(String textFromCSV) {
-        List<Account> updatesFromCSV = parseAccounts(textFromCSV);
+    public List<Account> parseAndStoreAccountFromCSV(InputStream csvData, ImportProgress progress) {
+        // there are only ever a handful of accounts, so they are all parsed before being stored
+        List<Account> updatesFromCSV = new ArrayList<>();
+        streamRows(openReader(csvData), progress, this::generateAccountFromString, updatesFromCSV::addAll);
 
-        acctDao.addAllAccounts(updatesFromCSV);
+        progress.setPhase(ImportProgress.Phase.PERSISTING);
+        BatchResult result = acctDao.addAllAccounts(updatesFromCSV);
+        progress.addPersisted(result.getPersistedIds().size());
+
+        logFailures("account", result);
+        result.getFailures().forEach(failure -> progress.addError(failure.toString()));
 
         return updatesFromCSV;
     }
 
     /**
-     * Clears the {@link Transaction} database and then parses and stores in the data all of
-     * transactions in the provided CSV
-     * @param textFromCSV Input from the CSV File
-     * @param acctMap {@link Map} of {@link Account} name ({@link String} to Account {@link UUID}
-     * @return {@link List} of parsed {@link Transaction}
+     * Replaces all of the {@link Transaction} in the database with the transactions in the provided CSV,
+     * resolving account names against the existing accounts.  The rows are staged as they are read, and
+     * the old transactions stay visible until the new ones have been swapped in
+     * @param csvData {@link InputStream} containing the CSV File
+     * @param mode {@link LoadMode} used to stage the parsed rows
+     * @param progress {@link ImportProgress} to report to
+     * @return {@link ImportSummary} containing the number of transactions stored
      */
-    public List<Transaction> parseAndClearAndStoreTxFromCSV(String textFromCSV, Map<String, UUID> acctMap) {
-        txDao.deleteAllTransactions();
+    public ImportSummary parseAndClearAndStoreTxFromCSV(InputStream csvData, LoadMode mode, ImportProgress progress) {
+        Map<String, UUID> accountNameMap = accountIndex.getNameToIdMap();
+        ImportSummary summary = new ImportSummary();
+
+        txTimeoutHelper.callWithTimeout(transactionTimeout, () -> stagingLoader.replaceTransactions(mode, progress, sink -> summary.addTransactions(
+                streamRows(openReader(csvData), progress, (tokenizer, line) -> generateTxFromString(tokenizer, line, accountNameMap), sink::addTransactions))));
 
-        return parseAndStoreTxFromCSV(textFromCSV, acctMap);
+        summary.setSuccess(true);
+        return summary;
     }
 
     /**
-     * Parses and stores in the database all of the {@link Transaction} from the CSV File
+     * Parses and stores in the database all of the {@link Transaction} from the CSV File, resolving
+     * account names against the existing accounts
      * @param textFromCSV Input from the CSV File
-     * @param acctMap {@link Map} of {@link Account} name ({@link String} to Account {@link UUID}
+     * @param mode {@link LoadMode} used to store the parsed rows
      * @return {@link List} of parsed {@link Transaction}
      */
-    public List<Transaction> parseAndStoreTxFromCSV(String textFromCSV, Map<String, UUID> acctMap) {
-        List<Transaction> updatesFromCSV = parseTransactions(textFromCSV, acctMap);
+    public List<Transaction> parseAndStoreTxFromCSV(String textFromCSV, LoadMode mode) {
+        List<Transaction> updatesFromCSV = parseTransactions(textFromCSV, accountIndex.getNameToIdMap());
 
-        txDao.addAllTransactions(updatesFromCSV);
+        logFailures("transaction", bulkLoader.storeTransactions(updatesFromCSV, mode));
 
         return updatesFromCSV;
     }
@@ -149,54 +245,18 @@ public class CSVParser {
      * @return {@link TxUpdate} object containing all of the parsed items
      */
     public TxUpdate parseAllFromCSV(String textFromCSV) {
-        TxUpdate returnValue = new TxUpdate();
-
-        String sections[] = textFromCSV.split("~!~");
-        String accounts;
-        String transactions;
-
-        if (sections.length == 2) {
-            accounts = sections[0];
-            transactions = sections[1];
-        }
-        else if (sections.length == 3) {
-            // For some reason, the split tends to return 3, with the first being empty, handle this case
-            if (sections[0].equals("")) {
-                accounts = sections[1];
-                transactions = sections[2];
-            }
-            else {
-                LOGGER.error("Incorrect number of sections provided, expected 2 got {}", sections.length);
-                throw new IllegalArgumentException("Incorrect number of sections provided, expected 2 got " + sections.length);
-            }
-        }
-        else {
-            LOGGER.error("Incorrect number of sections provided, expected 2 got {}", sections.length);
-            throw new IllegalArgumentException("Incorrect number of sections provided, expected 2 got " + sections.length);
-        }
-
-        /* Accounts */
-        //need to strip off the first line
-        int firstSlashNPos = accounts.indexOf("\\n");
-        String accountSection = accounts.substring(firstSlashNPos + 1);
-        LOGGER.debug("Captured account section\n{}", accountSection);
-
-        returnValue.getAccounts().addAll(parseAccounts(accountSection));
-
-        //build the accounts map for transactions
-        Map<String, UUID> accountNameMap = acctHelper.buildNameToUUIDMap(returnValue.getAccounts());
-
-        /* Transactions */
-        //need to strip off the first line
-        int firstTxSlashNPos = transactions.indexOf("\\n");
-        String transSection = transactions.substring(firstTxSlashNPos + 1);
-        LOGGER.debug("Captured Transaction section\n{}", transSection);
-
-        returnValue.getTransactions().addAll(parseTransactions(transSection, accountNameMap));
+        return parseAll(new BufferedReader(new StringReader(textFromCSV)), ImportProgress.NONE);
+    }
 
-        returnValue.setSuccess(true);
-        
-        return returnValue;
+    /**
+     * Parses all of the {@link Transaction} and {@link Account}
+     * from the provided CSV data
+     * @param csvData {@link InputStream} containing the CSV File
+     * @param progress {@link ImportProgress} to report to
+     * @return {@link TxUpdate} object containing all of the parsed items
+     */
+    public TxUpdate parseAllFromCSV(InputStream csvData, ImportProgress progress) {
+        return parseAll(openReader(csvData), progress);
     }
 
     /**
@@ -206,13 +266,8 @@ public class CSVParser {
      */
     public List<Account> parseAccounts(String textFromCSV) {
         List<Account> returnList = new ArrayList<>();
-
-        String[] allLines = textFromCSV.split("\\n");
-        LOGGER.info("Found {} Accounts!", allLines.length);
-
-        for (int lineCounter = 1; lineCounter < allLines.length; lineCounter++) {
-            returnList.add(generateAccountFromString(allLines[lineCounter]));
-        }
+        streamRows(new BufferedReader(new StringReader(textFromCSV)), ImportProgress.NONE,
+                this::generateAccountFromString, returnList::addAll);
 
         return returnList;
     }
@@ -225,54 +280,168 @@ public class CSVParser {
      */
     public List<Transaction> parseTransactions(String textFromCSV, Map<String, UUID> accountNameMap) {
         List<Transaction> returnList = new ArrayList<>();
+        streamRows(new BufferedReader(new StringReader(textFromCSV)), ImportProgress.NONE,
+                (tokenizer, line) -> generateTxFromString(tokenizer, line, accountNameMap), returnList::addAll);
+
+        return returnList;
+    }
+
+    /**
+     * Parses a full export into memory
+     * @param reader {@link BufferedReader} over the CSV File
+     * @param progress {@link ImportProgress} to report to
+     * @return {@link TxUpdate} object containing all of the parsed items
+     */
+    private TxUpdate parseAll(BufferedReader reader, ImportProgress progress) {
+        TxUpdate returnValue = new TxUpdate();
+        ImportSummary summary = new ImportSummary();
 
-        String[] allLines = textFromCSV.split("\\n");
-        LOGGER.info("Found {} Transactions!", allLines.length);
+        streamAll(reader, summary, progress, batch -> { }, returnValue.getTransactions()::addAll);
 
-        for (int lineCounter = 1; lineCounter < allLines.length; lineCounter++) {
-            returnList.add(generateTxFromString(allLines[lineCounter], accountNameMap));
+        returnValue.setAccounts(summary.getAccounts());
+        returnValue.setSuccess(true);
+
+        return returnValue;
+    }
+
+    /**
+     * Reads a full export, handing the rows on in batches as they are parsed.  The export holds an
+     * accounts section followed by a transactions section, each opened by a line starting with
+     * the section marker.  The accounts are kept in the summary so that the transactions can be
+     * matched to them by name
+     * @param reader {@link BufferedReader} over the CSV File
+     * @param summary {@link ImportSummary} to add the accounts and transaction count to
+     * @param progress {@link ImportProgress} to report to
+     * @param accountSink {@link Consumer} to hand each batch of {@link Account} to
+     * @param txSink {@link Consumer} to hand each batch of {@link Transaction} to
+     */
+    private void streamAll(BufferedReader reader, ImportSummary summary, ImportProgress progress,
+                           Consumer<List<Account>> accountSink, Consumer<List<Transaction>> txSink) {
+        CSVRecordReader records = new CSVRecordReader(reader);
+        CSVImportPipeline pipeline = pipeline();
+
+        String record = records.next();
+        while (record != null && record.isEmpty()) {
+            record = records.next();
+        }
+        if (record == null || !isSectionMarker(record)) {
+            LOGGER.error("Expected the accounts section at the start of the data");
+            throw new IllegalArgumentException("Expected the accounts section at the start of the data");
         }
 
-        return returnList;
+        // the rest of each marker line is the section title, so there is nothing to parse
+        pipeline.parse(records, this::isSectionMarker, this::generateAccountFromString, batch -> {
+            summary.getAccounts().addAll(batch);
+            accountSink.accept(batch);
+        }, progress);
+
+        if (records.next() == null) {
+            LOGGER.error("Incorrect number of sections provided, expected 2 got 1");
+            throw new IllegalArgumentException("Incorrect number of sections provided, expected 2 got 1");
+        }
+
+        Map<String, UUID> accountNameMap = acctHelper.buildNameToUUIDMap(summary.getAccounts());
+        summary.addTransactions(pipeline.parse(records, this::isSectionMarker,
+                (tokenizer, line) -> generateTxFromString(tokenizer, line, accountNameMap), txSink, progress));
+
+        if (records.next() != null) {
+            LOGGER.error("Incorrect number of sections provided, found a third section on line {}", records.getLineNumber());
+            throw new IllegalArgumentException("Incorrect number of sections provided, found a third section on line " + records.getLineNumber());
+        }
+
+        LOGGER.info("Parsed {} accounts and {} transactions", summary.getAccounts().size(), summary.getTransactionCount());
+    }
+
+    /**
+     * Reads the rows of a single section, skipping the header line, and hands them on in batches as
+     * they are parsed
+     * @param reader {@link BufferedReader} over the CSV data
+     * @param progress {@link ImportProgress} to report to
+     * @param rowParser {@link BiFunction} that turns a line into a row using the provided {@link CSVTokenizer}
+     * @param batchSink {@link Consumer} to hand each batch of rows to
+     * @param <T> type of row being parsed
+     * @return number of rows parsed
+     */
+    private <T> long streamRows(BufferedReader reader, ImportProgress progress, BiFunction<CSVTokenizer, String, T> rowParser, Consumer<List<T>> batchSink) {
+        CSVRecordReader records = new CSVRecordReader(reader);
+
+        // the first line holds the column headers
+        records.next();
+
+        long rowCount = pipeline().parse(records, record -> false, rowParser, batchSink, progress);
+
+        LOGGER.info("Parsed {} rows", rowCount);
+        return rowCount;
+    }
+
+    /**
+     * Returns whether the record opens a new section of a full export
+     * @param record {@link String} holding the record
+     * @return true if the record is a section marker
+     */
+    private boolean isSectionMarker(String record) {
+        return record.startsWith(SECTION_MARKER);
+    }
+
+    /**
+     * Builds the pipeline used to parse the rows, falling back to the common pool when the parser
+     * has been created outside of the container
+     * @return {@link CSVImportPipeline} for a single import
+     */
+    private CSVImportPipeline pipeline() {
+        if (parsePool == null) {
+            return new CSVImportPipeline(ForkJoinPool.commonPool(), batchSize, DEFAULT_CHUNKS_IN_FLIGHT);
+        }
+
+        return new CSVImportPipeline(parsePool.getPool(), batchSize, parsePool.getChunksInFlight());
+    }
+
+    /**
+     * Wraps the provided stream in a reader that can be read a line at a time
+     * @param csvData {@link InputStream} containing the CSV data
+     * @return {@link BufferedReader} over the data
+     */
+    private static BufferedReader openReader(InputStream csvData) {
+        return new BufferedReader(new InputStreamReader(csvData, StandardCharsets.UTF_8));
     }
 
     /**
      * Generates a single account from a line from the CSV File
+     * @param tokenizer {@link CSVTokenizer} used to split the line
      * @param csvLine {@link String} the line from the file
      * @return {@link Account} generated from the parsed line
      */
-    private Account generateAccountFromString(String csvLine) {
+    private Account generateAccountFromString(CSVTokenizer tokenizer, String csvLine) {
         /* Expected Order
         0 - Name
         1 - Debit
         2 - Credit
         3 - Notes
         4 - Type (Dynamic / Calculated)
+        (the generator ends each account line with a comma, so there may be an empty 6th field)
          */
 
-        String[] lineData = csvLine.split(",", 5);
+        int fieldCount = tokenizer.tokenize(csvLine, 6);
 
-        if (lineData.length != 5) {
-            throw new IllegalArgumentException("Incorrect number of entries provided, expected 5 got " + lineData.length);
+        if (fieldCount != 5 && !(fieldCount == 6 && tokenizer.isEmpty(5))) {
+            throw new IllegalArgumentException("Incorrect number of entries provided, expected 5 got " + fieldCount);
         }
 
-        String name = lineData[0];
+        String name = tokenizer.getString(0);
 
-        float amount = determineAmount(lineData[1], lineData[2]);
+        long amount = determineAmount(tokenizer, 1, 2);
 
-        String notes = lineData[3];
+        String notes = tokenizer.getString(3);
 
-        boolean dynamic = true;
-        //TODO: This string should be a constant somewhere
-        if (lineData[4].equals("Calculated")) {
-            dynamic = false;
-        }
+        boolean dynamic = !tokenizer.matches(4, CALCULATED);
 
         Account newAccount = new Account(name, amount, notes, dynamic);
 
-        LOGGER.debug("    ~~~~~");
-        LOGGER.debug(newAccount.toString());
-        LOGGER.debug("    ~~~~~");
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("    ~~~~~");
+            LOGGER.debug(newAccount.toString());
+            LOGGER.debug("    ~~~~~");
+        }
 
         return newAccount;
 
@@ -280,11 +449,12 @@ public class CSVParser {
 
     /**
      * Generates a single transaction from a line from the CSV File
+     * @param tokenizer {@link CSVTokenizer} used to split the line
      * @param csvLine the line from the file
      * @param accountNameMap {@link Map} of account name {@link String} to account UUID {@link UUID}
      * @return {@link Transaction} created from the String
      */
-    private Transaction generateTxFromString(String csvLine, Map<String, UUID> accountNameMap) {
+    private Transaction generateTxFromString(CSVTokenizer tokenizer, String csvLine, Map<String, UUID> accountNameMap) {
         /* Expected order
         0 - Name
         1 - Debit
@@ -295,76 +465,73 @@ public class CSVParser {
         6 - Notes
          */
 
-        String[] lineData = csvLine.split(",", 7);
+        int fieldCount = tokenizer.tokenize(csvLine, 7);
 
-        if (lineData.length != 7) {
-            throw new IllegalArgumentException("Incorrect number of lines provided, expected 7 got " + lineData.length);
+        if (fieldCount != 7) {
+            throw new IllegalArgumentException("Incorrect number of lines provided, expected 7 got " + fieldCount);
         }
 
-        String name = lineData[0];
+        String name = tokenizer.getString(0);
 
-        float amount = determineAmount(lineData[1], lineData[2]);
+        long amount = determineAmount(tokenizer, 1, 2);
 
-        String accountName = lineData[3];
-        UUID accountUUID = accountNameMap.get(accountName);
+        UUID accountUUID = accountNameMap.get(tokenizer.getString(3));
 
-        LocalDate transDate = LocalDate.now();
-
-        if (!lineData[4].equals("")) {
-            LOGGER.debug("Got the time: {}", lineData[4]);
-            transDate = LocalDate.parse(lineData[4]);
-        }
+        LocalDate transDate = tokenizer.isEmpty(4) ? LocalDate.now() : tokenizer.getDate(4);
 
         Transaction.TransType type = Transaction.TransType.FUTURE;
-        if (!lineData[5].equals("")) {
-            type = Transaction.TransType.valueOf(lineData[5]);
+        if (!tokenizer.isEmpty(5)) {
+            type = tokenizer.getEnum(5, TRANS_TYPES);
         }
 
-        String notes = lineData[6];
+        String notes = tokenizer.getString(6);
 
         Transaction newTrans = new Transaction(name, transDate, amount, accountUUID, notes, type);
 
-        LOGGER.debug("    ~~~~~");
-        LOGGER.debug(newTrans.toString());
-        LOGGER.debug("    ~~~~~");
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("    ~~~~~");
+            LOGGER.debug(newTrans.toString());
+            LOGGER.debug("    ~~~~~");
+        }
 
         return newTrans;
     }
 
     /**
-     * Parses an amount value out of the provided debit and credit strings
-     * @param debit {@link String} containing the debit value
-     * @param credit {@link String} containing the credit value
-     * @return float containing the parsed value (or 0 if no value could be parsed)
+     * Parses an amount value out of the debit and credit fields of the current line
+     * @param tokenizer {@link CSVTokenizer} holding the current line
+     * @param debitField index of the debit field
+     * @param creditField index of the credit field
+     * @return long containing the parsed value in cents (or 0 if no value could be parsed)
      */
-    private float determineAmount(String debit, String credit) {
-        float amount = 0;
+    private long determineAmount(CSVTokenizer tokenizer, int debitField, int creditField) {
+        long amount = 0;
 
-        if (!debit.equals("")) {
-            amount = -1 * getAmountFromString(debit);
+        if (!tokenizer.isEmpty(debitField)) {
+            amount = -tokenizer.getCents(debitField);
         }
-        else if (!credit.equals("")) {
-            amount = getAmountFromString(credit);
+        else if (!tokenizer.isEmpty(creditField)) {
+            amount = tokenizer.getCents(creditField);
         }
         else {
-            LOGGER.warn("Failed to parse an amount Debit: {} Credit {}", debit, credit);
+            LOGGER.warn("Failed to parse an amount, both the debit and credit were empty");
         }
 
         return amount;
     }
 
     /**
-     * Parses a float out of the monetary string (handles the $)
-     * @param amountString a {@link String} containing the value
-     * @return float parsed from the string
+     * Logs each of the rows that failed to be stored
+     * @param rowType {@link String} describing the type of row for the log message
+     * @param result {@link BatchResult} from storing the rows
      */
-    private float getAmountFromString(String amountString) {
-        String value = amountString;
-        if (value.charAt(0) == '$') {
-            value = value.substring(1);
+    private void logFailures(String rowType, BatchResult result) {
+        if (!result.isSuccess()) {
+            LOGGER.error("Failed to store {} {} rows", result.getFailures().size(), rowType);
+            for (BatchResult.Failure failure : result.getFailures()) {
+                LOGGER.error("    {}", failure);
+            }
         }
-
-        return Float.parseFloat(value);
     }
 
 }
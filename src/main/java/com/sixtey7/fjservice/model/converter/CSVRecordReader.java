@@ -0,0 +1,105 @@
+package com.sixtey7.fjservice.model.converter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads CSV records one at a time, keeping track of the line each record started on so that
+ * errors can point back at the original file.  A record is usually a single line, but carries on
+ * over line breaks inside quoted fields.  One record can be pushed back to be read again
+ */
+final class CSVRecordReader {
+
+    /**
+     * Reader over the CSV data
+     */
+    private final BufferedReader reader;
+
+    /**
+     * Number of lines read so far
+     */
+    private int linesRead;
+
+    /**
+     * Line the last record returned started on
+     */
+    private int lineNumber;
+
+    /**
+     * Record that was pushed back (null if there isn't one)
+     */
+    private String pushedBack;
+
+    /**
+     * Line the pushed back record started on
+     */
+    private int pushedBackLine;
+
+    /**
+     * Constructor
+     * @param reader {@link BufferedReader} over the CSV data
+     */
+    CSVRecordReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next record
+     * @return {@link String} holding the record (null at the end of the data)
+     * @throws UncheckedIOException if the data couldn't be read
+     */
+    String next() {
+        if (pushedBack != null) {
+            String record = pushedBack;
+            lineNumber = pushedBackLine;
+            pushedBack = null;
+            return record;
+        }
+
+        try {
+            String line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber = ++linesRead;
+
+            if (line.indexOf('"') < 0 || !CSVTokenizer.isIncomplete(line)) {
+                return line;
+            }
+
+            StringBuilder record = new StringBuilder(line);
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                linesRead++;
+                record.append('\n').append(line);
+            }
+            while (CSVTokenizer.isIncomplete(record));
+
+            return record.toString();
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException("Failed to read the CSV data", ioe);
+        }
+    }
+
+    /**
+     * Pushes the last record back so that the next call to {@link #next()} returns it again
+     * @param record {@link String} holding the last record read
+     */
+    void pushBack(String record) {
+        pushedBack = record;
+        pushedBackLine = lineNumber;
+    }
+
+    /**
+     * Returns the line the last record read started on (1 based)
+     * @return line number
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -0,0 +1,306 @@
+package com.sixtey7.fjservice.model.converter;
+
+import com.sixtey7.fjservice.utils.MoneyHelper;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Splits a CSV line into fields in place, recording where each field starts and ends rather than
+ * copying it out, so that amounts, dates and enums can be parsed straight from the line.  Fields may
+ * be wrapped in double quotes to hold commas, quotes (doubled) and line breaks.  Dates and enum
+ * names repeat heavily in an export, so they are memoized for the life of the tokenizer.
+ * Not thread safe, each parse should use its own instance
+ */
+final class CSVTokenizer {
+
+    /**
+     * Most dates to remember, which is plenty for several decades of daily transactions
+     */
+    private static final int MAX_CACHED_DATES = 16384;
+
+    /**
+     * Line currently being tokenized
+     */
+    private CharSequence line;
+
+    /**
+     * Start of each field (after any opening quote)
+     */
+    private int[] starts = new int[8];
+
+    /**
+     * End of each field (before any closing quote)
+     */
+    private int[] ends = new int[8];
+
+    /**
+     * Whether each field was quoted
+     */
+    private boolean[] quoted = new boolean[8];
+
+    /**
+     * Number of fields found in the line
+     */
+    private int count;
+
+    /**
+     * Dates seen so far, keyed by year * 10000 + month * 100 + day
+     */
+    private final Map<Integer, LocalDate> dateCache = new HashMap<>();
+
+    /**
+     * Splits the line into fields.  Once the last allowed field is reached, the rest of the line
+     * becomes that field, which matches what {@link String#split(String, int)} did for older exports
+     * @param line {@link CharSequence} to split
+     * @param maxFields most fields to split the line into
+     * @return number of fields found
+     */
+    int tokenize(CharSequence line, int maxFields) {
+        this.line = line;
+        this.count = 0;
+
+        int length = line.length();
+        int pos = 0;
+
+        while (true) {
+            ensureCapacity();
+
+            if (pos < length && line.charAt(pos) == '"') {
+                int close = findClosingQuote(line, pos + 1);
+                record(pos + 1, close, true);
+
+                // skip anything between the closing quote and the next comma
+                pos = close + 1;
+                while (pos < length && line.charAt(pos) != ',') {
+                    pos++;
+                }
+            }
+            else if (count == maxFields - 1) {
+                record(pos, length, false);
+                pos = length;
+            }
+            else {
+                int comma = pos;
+                while (comma < length && line.charAt(comma) != ',') {
+                    comma++;
+                }
+                record(pos, comma, false);
+                pos = comma;
+            }
+
+            if (pos >= length || count == maxFields) {
+                return count;
+            }
+
+            // skip the comma
+            pos++;
+        }
+    }
+
+    /**
+     * Returns whether the line ends part way through a quoted field, meaning it carries on onto the next line.
+     * Quotes are read the same way as {@link #tokenize(CharSequence, int)} reads them: only a quote at the
+     * start of a field opens a quoted field, so the raw quotes older exports wrote in names and notes
+     * (such as {@code 32" TV}) are left alone
+     * @param line {@link CharSequence} to check
+     * @return true if a quoted field in the line isn't closed
+     */
+    static boolean isIncomplete(CharSequence line) {
+        int length = line.length();
+        int pos = 0;
+
+        while (pos < length) {
+            if (line.charAt(pos) == '"') {
+                pos = findClosingQuote(line, pos + 1);
+                if (pos == length) {
+                    return true;
+                }
+            }
+
+            // skip to the start of the next field
+            while (pos < length && line.charAt(pos) != ',') {
+                pos++;
+            }
+            pos++;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of fields found by the last call to {@link #tokenize(CharSequence, int)}
+     * @return number of fields
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns whether the field is empty
+     * @param field index of the field
+     * @return true if the field has no characters
+     */
+    boolean isEmpty(int field) {
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * Returns the field as a {@link String}, removing the escaping from quoted fields
+     * @param field index of the field
+     * @return {@link String} value of the field
+     */
+    String getString(int field) {
+        String value = line.subSequence(starts[field], ends[field]).toString();
+
+        return quoted[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * Returns whether the field holds exactly the provided value
+     * @param field index of the field
+     * @param value {@link String} to compare against
+     * @return true if the field matches
+     */
+    boolean matches(int field, String value) {
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length != value.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the field as an amount in cents
+     * @param field index of the field
+     * @return amount in cents
+     * @throws NumberFormatException if the field isn't an amount
+     */
+    long getCents(int field) {
+        return MoneyHelper.parseCents(line, starts[field], ends[field]);
+    }
+
+    /**
+     * Parses the field as an ISO date (yyyy-MM-dd), reusing the {@link LocalDate} if the date has been seen before
+     * @param field index of the field
+     * @return {@link LocalDate} parsed from the field
+     * @throws java.time.DateTimeException if the field isn't a valid date
+     */
+    LocalDate getDate(int field) {
+        int start = starts[field];
+        if (ends[field] - start != 10 || line.charAt(start + 4) != '-' || line.charAt(start + 7) != '-') {
+            return LocalDate.parse(getString(field));
+        }
+
+        int year = digits(start, 4);
+        int month = digits(start + 5, 2);
+        int day = digits(start + 8, 2);
+        if (year < 0 || month < 0 || day < 0) {
+            return LocalDate.parse(getString(field));
+        }
+
+        Integer key = year * 10000 + month * 100 + day;
+        LocalDate date = dateCache.get(key);
+        if (date == null) {
+            date = LocalDate.of(year, month, day);
+            if (dateCache.size() < MAX_CACHED_DATES) {
+                dateCache.put(key, date);
+            }
+        }
+
+        return date;
+    }
+
+    /**
+     * Parses the field as one of the provided enum constants, comparing the characters in place
+     * @param field index of the field
+     * @param values the constants of the enum
+     * @param <E> type of the enum
+     * @return the matching constant
+     * @throws IllegalArgumentException if no constant matches
+     */
+    <E extends Enum<E>> E getEnum(int field, E[] values) {
+        for (E value : values) {
+            if (matches(field, value.name())) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("No " + values.getClass().getComponentType().getSimpleName() + " constant " + getString(field));
+    }
+
+    /**
+     * Finds the quote that closes a quoted field, stepping over doubled quotes
+     * @param line {@link CharSequence} holding the field
+     * @param pos position just after the opening quote
+     * @return position of the closing quote (the end of the line if it isn't closed)
+     */
+    private static int findClosingQuote(CharSequence line, int pos) {
+        int length = line.length();
+        while (pos < length) {
+            if (line.charAt(pos) == '"') {
+                if (pos + 1 < length && line.charAt(pos + 1) == '"') {
+                    pos += 2;
+                    continue;
+                }
+                return pos;
+            }
+            pos++;
+        }
+
+        return length;
+    }
+
+    /**
+     * Parses a run of digits
+     * @param start position of the first digit
+     * @param length number of digits
+     * @return the value of the digits (-1 if any of the characters isn't a digit)
+     */
+    private int digits(int start, int length) {
+        int value = 0;
+        for (int pos = start; pos < start + length; pos++) {
+            char c = line.charAt(pos);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * Records the bounds of the next field
+     * @param start start of the field
+     * @param end end of the field
+     * @param isQuoted whether the field was quoted
+     */
+    private void record(int start, int end, boolean isQuoted) {
+        starts[count] = start;
+        ends[count] = end;
+        quoted[count] = isQuoted;
+        count++;
+    }
+
+    /**
+     * Grows the field arrays when they are full
+     */
+    private void ensureCapacity() {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            quoted = Arrays.copyOf(quoted, count * 2);
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package com.sixtey7.fjservice.model.db;
 
 import com.sixtey7.fjservice.model.Account;
+import com.sixtey7.fjservice.model.Transaction;
+import com.sixtey7.fjservice.model.transport.AccountDetailView;
+import com.sixtey7.fjservice.model.transport.AccountView;
+import com.sixtey7.fjservice.utils.AccountIndex;
+import com.sixtey7.fjservice.utils.TxSyncHelper;
+import com.sixtey7.fjservice.utils.VersionTracker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.FlushMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
-import javax.persistence.NoResultException;
+import javax.persistence.LockModeType;
 import javax.transaction.Transactional;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * DAO class for Account objects
@@ -25,11 +41,65 @@ public class AccountDAO {
     @Inject
     EntityManager em;
 
+    /**
+     * Used to persist accounts in bulk
+     */
+    @Inject
+    BatchPersister batchPersister;
+
+    /**
+     * Index of account names that needs to be thrown away when accounts change
+     */
+    @Inject
+    AccountIndex accountIndex;
+
+    /**
+     * Version counters behind the ETags, bumped on every write
+     */
+    @Inject
+    VersionTracker versionTracker;
+
+    /**
+     * Used to evict from the second-level cache again once the writing transaction completes
+     */
+    @Inject
+    TxSyncHelper txSyncHelper;
+
+    /**
+     * Number of rows to fetch from the database at a time when streaming
+     */
+    @ConfigProperty(name = "fjservice.export.fetch-size", defaultValue = "500")
+    int fetchSize;
+
     /**
      * LOGGER to be used for this class
      */
     private static final Logger LOGGER = LogManager.getLogger(AccountDAO.class);
 
+    /**
+     * Constructor expression selecting an {@link AccountView}, leaving out the notes
+     */
+    private static final String SELECT_VIEW =
+            "Select new com.sixtey7.fjservice.model.transport.AccountView(a.id, a.name, a.amount, a.dynamic) ";
+
+    /**
+     * Constructor expression selecting an {@link AccountDetailView}, including the notes
+     */
+    private static final String SELECT_DETAIL_VIEW =
+            "Select new com.sixtey7.fjservice.model.transport.AccountDetailView(a.id, a.name, a.amount, a.notes, a.dynamic) ";
+
+    /**
+     * Sets the balance of every non-dynamic account to the sum of its CONFIRMED transactions
+     * (type is stored by ordinal), returning the new balances
+     */
+    private static final String RECALCULATE_ALL_BALANCES =
+            "UPDATE accounts a SET amount = s.total " +
+            "FROM (SELECT acct.id AS account_id, COALESCE(SUM(t.amount), 0) AS total " +
+            "      FROM accounts acct LEFT JOIN transactions t ON t.account_id = acct.id AND t.type = :confirmed " +
+            "      WHERE acct.dynamic = false GROUP BY acct.id) s " +
+            "WHERE a.id = s.account_id " +
+            "RETURNING CAST(a.id AS varchar), a.amount";
+
     /**
      * Returns all of the accounts in the database
      * @return {@link List} containing all of the {@link Account} entries in the database
@@ -37,12 +107,55 @@ public class AccountDAO {
     public List<Account> getAllAccounts() {
         LOGGER.debug("Getting all accounts");
 
-        List<Account> returnList = em.createQuery("Select a from Account a", Account.class).getResultList();
+        List<Account> returnList = em.createQuery("Select a from Account a", Account.class)
+                .setHint(QueryHints.HINT_CACHEABLE, true)
+                .getResultList();
 
         LOGGER.debug("Returning {} accounts", returnList.size());
         return returnList;
     }
 
+    /**
+     * Returns a read-only view of every account in the database, built straight from the selected
+     * columns so the rows never become managed entities.  The results are held in the query cache
+     * like {@link #getAllAccounts()}
+     * @param includeNotes whether the views should include the notes
+     * @return {@link List} of {@link AccountView} for all of the accounts
+     */
+    public List<AccountView> getAllAccountViews(boolean includeNotes) {
+        LOGGER.debug("Getting views of all accounts");
+
+        String jpql = includeNotes ? SELECT_DETAIL_VIEW : SELECT_VIEW;
+        List<AccountView> returnList = em.createQuery(jpql + "from Account a", AccountView.class)
+                .setHint(QueryHints.HINT_CACHEABLE, true)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setHint(QueryHints.HINT_FLUSH_MODE, FlushMode.MANUAL)
+                .getResultList();
+
+        LOGGER.debug("Returning {} accounts", returnList.size());
+        return returnList;
+    }
+
+    /**
+     * Streams all of the accounts in the database to the provided consumer using a forward
+     * only cursor, detaching each one once it has been consumed
+     * @param consumer {@link Consumer} to hand each {@link Account} to
+     */
+    @Transactional
+    public void streamAllAccounts(Consumer<Account> consumer) {
+        LOGGER.debug("Streaming all accounts");
+
+        try (Stream<Account> acctStream = em.createQuery("Select a from Account a", Account.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()) {
+            acctStream.forEach(acct -> {
+                consumer.accept(acct);
+                em.detach(acct);
+            });
+        }
+    }
+
     /**
      * Returns the data for the specified account
      * @param accountId String representing the UUID of the account to get
@@ -51,19 +164,13 @@ public class AccountDAO {
     public Account getAccount(String accountId) {
         LOGGER.debug("Getting account for id: {}", accountId);
 
-        UUID acctUUID = UUID.fromString(accountId);
-        try {
-            Account acct = (Account) em.createQuery("Select a from Account a where a.id = :acctId")
-                    .setParameter("acctId", accountId)
-                    .getSingleResult();
+        Account acct = em.find(Account.class, UUID.fromString(accountId));
 
-            return acct;
-        }
-        catch(NoResultException nre) {
-            // TODO: Probably shouldn't rely on catching an error here and handle this more gracefully
+        if (acct == null) {
             LOGGER.warn("Failed to find account with id: {}", accountId);
-            return null;
         }
+
+        return acct;
     }
 
     /**
@@ -87,25 +194,32 @@ public class AccountDAO {
             return null;
         }
 
+        accountIndex.invalidate();
+        versionTracker.accountsChanged();
+
         return acctToAdd.getId().toString();
     }
 
     /**
-     * Adds all of the provided accounts
+     * Adds all of the provided accounts, one database transaction per chunk
      * @param acctsToPersist {@link List} of {@link Account} that are to be persisted
-     * @return {@link List} of Strings containing the UUIDs that were persisted
+     * @return {@link BatchResult} containing the UUIDs that were persisted and any rows that failed
      */
-    public List<String> addAllAccounts(List<Account> acctsToPersist) {
+    public BatchResult addAllAccounts(List<Account> acctsToPersist) {
         LOGGER.debug("Saving {} accounts", acctsToPersist.size());
 
-        List<String> returnList = new ArrayList<>(acctsToPersist.size());
+        for (Account acct : acctsToPersist) {
+            if (acct.getId() == null) {
+                acct.setId(UUID.randomUUID());
+            }
+        }
 
-        acctsToPersist.forEach(acct -> {
-            returnList.add(this.addAccount(acct));
-        });
+        BatchResult result = batchPersister.persistAll(acctsToPersist, Account::getId);
+        accountIndex.invalidate();
+        versionTracker.accountsChanged();
 
-        LOGGER.debug("Added {} accounts", returnList.size());
-        return returnList;
+        LOGGER.debug("Added {} accounts, {} failed", result.getPersistedIds().size(), result.getFailures().size());
+        return result;
     }
 
     /**
@@ -125,9 +239,64 @@ public class AccountDAO {
             return false;
         }
 
+        evictAccount(accountToUpdate.getId());
+
         return true;
     }
 
+    /**
+     * Adds the provided delta to the balance of the indicated account, locking the row so that
+     * concurrent deltas are applied one after the other.  Dynamic accounts are left untouched
+     * @param accountId {@link UUID} of the account to update
+     * @param delta the amount in cents to add to the balance
+     * @return {@link Account} after the delta has been applied (null if not found)
+     */
+    @Transactional
+    public Account applyBalanceDelta(UUID accountId, long delta) {
+        LOGGER.debug("Applying balance delta of {} to account {}", delta, accountId);
+
+        Account acct = em.find(Account.class, accountId, LockModeType.PESSIMISTIC_WRITE);
+
+        if (acct == null) {
+            LOGGER.warn("Failed to find account with id: {}", accountId);
+            return null;
+        }
+
+        if (!acct.getDynamic() && delta != 0) {
+            acct.setAmountCents(acct.getAmountCents() + delta);
+            versionTracker.accountsChanged();
+        }
+
+        return acct;
+    }
+
+    /**
+     * Recalculates the balance of every non-dynamic account from its CONFIRMED transactions
+     * with a single set-based update
+     * @return {@link Map} of account {@link UUID} to its new balance in cents
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public Map<UUID, Long> recalculateAllBalances() {
+        LOGGER.debug("Recalculating the balance for all accounts");
+
+        List<Object[]> rows = em.createNativeQuery(RECALCULATE_ALL_BALANCES)
+                .setParameter("confirmed", Transaction.TransType.CONFIRMED.ordinal())
+                .getResultList();
+
+        Map<UUID, Long> returnMap = new HashMap<>();
+        for (Object[] row : rows) {
+            returnMap.put(UUID.fromString((String) row[0]), ((Number) row[1]).longValue());
+        }
+
+        LOGGER.debug("Recalculated the balance for {} accounts", returnMap.size());
+
+        // the native update isn't seen by the second-level cache
+        evictAllAccounts();
+
+        return returnMap;
+    }
+
     /**
      * Deletes the account matching the provided UUID
      * @param idToDelete String containing the UUID of the account to delete
@@ -143,6 +312,8 @@ public class AccountDAO {
 
         LOGGER.debug("Deleted {} accounts", returnVal);
 
+        evictAccount(uuidId);
+
         return returnVal;
     }
 
@@ -154,6 +325,73 @@ public class AccountDAO {
 
         LOGGER.debug("Deleted {} accounts", returnVal);
 
+        evictAllAccounts();
+
         return returnVal;
     }
+
+    /**
+     * Removes the indicated account, and any cached queries over accounts, from the second-level cache,
+     * throws away the account index and bumps the version of the accounts.  The cache is evicted again
+     * once the transaction completes, so that a reader can't reload the old row before the commit
+     * @param accountId {@link UUID} of the account to evict
+     */
+    public void evictAccount(UUID accountId) {
+        // taken now, as the entity manager can't be used once the transaction has completed
+        SessionFactory sessionFactory = getSessionFactory();
+
+        txSyncHelper.runNowAndAfterCompletion(() -> {
+            sessionFactory.getCache().evict(Account.class, accountId);
+            sessionFactory.getCache().evictDefaultQueryRegion();
+        });
+        accountIndex.invalidate();
+        versionTracker.accountsChanged();
+    }
+
+    /**
+     * Removes all accounts, and any cached queries over accounts, from the second-level cache, throws
+     * away the account index and bumps the version of the accounts.  Needs to be called whenever the
+     * accounts table is written to outside of the entity manager (native SQL or COPY).  The cache is
+     * evicted again once the transaction completes, so that a reader can't reload the old rows before the commit
+     */
+    public void evictAllAccounts() {
+        // taken now, as the entity manager can't be used once the transaction has completed
+        SessionFactory sessionFactory = getSessionFactory();
+
+        txSyncHelper.runNowAndAfterCompletion(() -> {
+            sessionFactory.getCache().evict(Account.class);
+            sessionFactory.getCache().evictDefaultQueryRegion();
+        });
+        accountIndex.invalidate();
+        versionTracker.accountsChanged();
+    }
+
+    /**
+     * Returns the hit / miss statistics for the account cache regions
+     * @return {@link Map} of statistic name to value
+     */
+    public Map<String, Long> getCacheStatistics() {
+        Statistics stats = getSessionFactory().getStatistics();
+        Map<String, Long> returnMap = new LinkedHashMap<>();
+
+        CacheRegionStatistics entityStats = stats.getDomainDataRegionStatistics(Account.class.getName());
+        returnMap.put("entityHits", entityStats.getHitCount());
+        returnMap.put("entityMisses", entityStats.getMissCount());
+        returnMap.put("entityPuts", entityStats.getPutCount());
+        returnMap.put("entityCount", entityStats.getElementCountInMemory());
+
+        returnMap.put("queryHits", stats.getQueryCacheHitCount());
+        returnMap.put("queryMisses", stats.getQueryCacheMissCount());
+        returnMap.put("queryPuts", stats.getQueryCachePutCount());
+
+        return returnMap;
+    }
+
+    /**
+     * Returns the underlying Hibernate {@link SessionFactory}
+     * @return {@link SessionFactory} backing the entity manager
+     */
+    private SessionFactory getSessionFactory() {
+        return em.getEntityManagerFactory().unwrap(SessionFactory.class);
+    }
 }
@@ -0,0 +1,334 @@
+package com.sixtey7.fjservice.model.db;
+
+import com.sixtey7.fjservice.model.Transaction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * DAO class for the daily balance snapshots.  Each snapshot holds the confirmed balance of an account
+ * at the end of a day it had CONFIRMED transactions, for every day up to the snapshot horizon, so that
+ * the balance on any date is one index lookup plus a sum over the transactions after the horizon.
+ * The horizon row also serializes the writers: anything applying a delta holds a share lock on it, and
+ * anything moving it holds an exclusive lock, so the horizon can't move past a transaction that is
+ * still being written and leave it out of the snapshots
+ */
+@Dependent
+public class BalanceSnapshotDAO {
+
+    /**
+     * Entity manager to be used for this DAO
+     */
+    @Inject
+    EntityManager em;
+
+    /**
+     * Most days the horizon can fall behind the database's current date before it is rolled forward
+     */
+    @ConfigProperty(name = "fjservice.snapshots.max-tail-days", defaultValue = "7")
+    int maxTailDays;
+
+    /**
+     * Logger to be used for this class
+     */
+    private static final Logger LOGGER = LogManager.getLogger(BalanceSnapshotDAO.class);
+
+    /**
+     * Builds the snapshots for every account from its CONFIRMED transactions up to the horizon
+     */
+    private static final String REBUILD_SNAPSHOTS =
+            "INSERT INTO account_balance_snapshots (account_id, snapshot_date, balance) " +
+            "SELECT account_id, date, SUM(SUM(amount)) OVER (PARTITION BY account_id ORDER BY date) " +
+            "FROM transactions " +
+            "WHERE type = :confirmed AND date IS NOT NULL AND account_id IS NOT NULL AND date <= CURRENT_DATE " +
+            "GROUP BY account_id, date";
+
+    /**
+     * Builds the snapshots for every account for the days after the horizon up to yesterday, carrying on
+     * from the latest snapshot at the horizon
+     */
+    private static final String ROLL_FORWARD_SNAPSHOTS =
+            "INSERT INTO account_balance_snapshots (account_id, snapshot_date, balance) " +
+            "SELECT t.account_id, t.date, COALESCE((SELECT s.balance FROM account_balance_snapshots s " +
+            "    WHERE s.account_id = t.account_id AND s.snapshot_date <= :horizon " +
+            "    ORDER BY s.snapshot_date DESC LIMIT 1), 0) " +
+            "    + SUM(SUM(t.amount)) OVER (PARTITION BY t.account_id ORDER BY t.date) " +
+            "FROM transactions t " +
+            "WHERE t.type = :confirmed AND t.account_id IS NOT NULL AND t.date > :horizon AND t.date < CURRENT_DATE " +
+            "GROUP BY t.account_id, t.date";
+
+    /**
+     * Returns whether the horizon has fallen more than the allowed number of days behind the current date
+     */
+    private static final String HORIZON_IS_STALE =
+            "SELECT horizon < CURRENT_DATE - CAST(:maxTailDays AS int) FROM balance_snapshot_horizon WHERE id = 1";
+
+    /**
+     * Makes sure there is a snapshot for the account on the date, seeded from the previous snapshot
+     */
+    private static final String ENSURE_SNAPSHOT =
+            "INSERT INTO account_balance_snapshots (account_id, snapshot_date, balance) " +
+            "SELECT CAST(:acctId AS uuid), CAST(:date AS date), COALESCE((SELECT s.balance FROM account_balance_snapshots s " +
+            "    WHERE s.account_id = :acctId AND s.snapshot_date < :date " +
+            "    ORDER BY s.snapshot_date DESC LIMIT 1), 0) " +
+            "ON CONFLICT (account_id, snapshot_date) DO NOTHING";
+
+    /**
+     * Returns the latest snapshot for the account on or before the date
+     */
+    private static final String LATEST_SNAPSHOT =
+            "SELECT s.balance FROM account_balance_snapshots s " +
+            "WHERE s.account_id = :acctId AND s.snapshot_date <= :date " +
+            "ORDER BY s.snapshot_date DESC LIMIT 1";
+
+    /**
+     * Returns the confirmed total per day for the account over the interval (startDate, endDate]
+     */
+    private static final String DAILY_TOTALS =
+            "SELECT t.date, SUM(t.amount) FROM transactions t " +
+            "WHERE t.account_id = :acctId AND t.type = :confirmed AND t.date > :startDate AND t.date <= :endDate " +
+            "GROUP BY t.date ORDER BY t.date";
+
+    /**
+     * Returns the date up to which the snapshots cover the transactions
+     * @return {@link LocalDate} of the horizon
+     */
+    public LocalDate getHorizon() {
+        Date horizon = (Date) em.createNativeQuery("SELECT horizon FROM balance_snapshot_horizon WHERE id = 1")
+                .getSingleResult();
+
+        return horizon.toLocalDate();
+    }
+
+    /**
+     * Throws away all of the snapshots and rebuilds them from the transactions, moving the horizon up to
+     * the database's current date
+     * @return the number of snapshots built
+     */
+    @Transactional
+    public int rebuildSnapshots() {
+        LOGGER.info("Rebuilding the balance snapshots from {}", lockHorizon("FOR UPDATE"));
+
+        em.createNativeQuery("DELETE FROM account_balance_snapshots").executeUpdate();
+
+        int built = em.createNativeQuery(REBUILD_SNAPSHOTS)
+                .setParameter("confirmed", Transaction.TransType.CONFIRMED.ordinal())
+                .executeUpdate();
+
+        em.createNativeQuery("UPDATE balance_snapshot_horizon SET horizon = CURRENT_DATE WHERE id = 1")
+                .executeUpdate();
+
+        LOGGER.debug("Built {} balance snapshots", built);
+        return built;
+    }
+
+    /**
+     * Moves the horizon up to yesterday, snapshotting only the days after the old horizon, once it has
+     * fallen more than {@code fjservice.snapshots.max-tail-days} behind.  This keeps the tail summed on
+     * every read short between imports without a full rebuild.  The check is a single row lookup, so it
+     * is cheap enough to make before each read
+     * @return the number of snapshots built (0 if the horizon is recent enough)
+     */
+    @Transactional
+    public int rollForwardIfStale() {
+        if (!isHorizonStale()) {
+            return 0;
+        }
+
+        // check again once the lock is held, as another reader may have rolled it forward already
+        LocalDate horizon = lockHorizon("FOR UPDATE");
+        if (!isHorizonStale()) {
+            return 0;
+        }
+
+        LOGGER.info("Rolling the balance snapshots forward from {}", horizon);
+
+        int built = em.createNativeQuery(ROLL_FORWARD_SNAPSHOTS)
+                .setParameter("confirmed", Transaction.TransType.CONFIRMED.ordinal())
+                .setParameter("horizon", horizon)
+                .executeUpdate();
+
+        em.createNativeQuery("UPDATE balance_snapshot_horizon SET horizon = CURRENT_DATE - 1 WHERE id = 1")
+                .executeUpdate();
+
+        LOGGER.debug("Built {} balance snapshots", built);
+        return built;
+    }
+
+    /**
+     * Applies a change in confirmed amount on the provided date to the snapshots of the account.  Changes
+     * after the horizon (or without a date) aren't covered by the snapshots and are ignored
+     * @param accountId {@link UUID} of the account
+     * @param date {@link LocalDate} of the transaction that changed (may be null)
+     * @param delta the change in the confirmed amount in cents
+     */
+    @Transactional
+    public void applyDelta(UUID accountId, LocalDate date, long delta) {
+        if (accountId == null || date == null || delta == 0) {
+            return;
+        }
+
+        // the share lock keeps the horizon from moving past the date until this transaction commits
+        if (date.isAfter(lockHorizon("FOR SHARE"))) {
+            return;
+        }
+
+        LOGGER.debug("Applying snapshot delta of {} to account {} from {}", delta, accountId, date);
+
+        em.createNativeQuery(ENSURE_SNAPSHOT)
+                .setParameter("acctId", accountId)
+                .setParameter("date", date)
+                .executeUpdate();
+
+        em.createNativeQuery("UPDATE account_balance_snapshots SET balance = balance + :delta " +
+                "WHERE account_id = :acctId AND snapshot_date >= :date")
+                .setParameter("delta", delta)
+                .setParameter("acctId", accountId)
+                .setParameter("date", date)
+                .executeUpdate();
+    }
+
+    /**
+     * Returns the confirmed balance of the account at the end of the provided date
+     * @param accountId {@link UUID} of the account
+     * @param date {@link LocalDate} to get the balance for
+     * @return the balance in cents
+     */
+    public long getBalanceAsOf(UUID accountId, LocalDate date) {
+        LocalDate horizon = getHorizon();
+        LocalDate snapshotDate = date.isAfter(horizon) ? horizon : date;
+
+        long balance = getLatestSnapshot(accountId, snapshotDate);
+        if (date.isAfter(horizon)) {
+            balance += getDailyTotals(accountId, horizon, date).values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        return balance;
+    }
+
+    /**
+     * Returns the confirmed balance of the account at the end of each day in the interval that it changed
+     * @param accountId {@link UUID} of the account
+     * @param startDate {@link LocalDate} of the first day of the interval
+     * @param endDate {@link LocalDate} of the last day of the interval
+     * @return {@link SortedMap} of date to balance in cents
+     */
+    @SuppressWarnings("unchecked")
+    public SortedMap<LocalDate, Long> getDailyBalances(UUID accountId, LocalDate startDate, LocalDate endDate) {
+        LocalDate horizon = getHorizon();
+        SortedMap<LocalDate, Long> balances = new TreeMap<>();
+
+        if (!startDate.isAfter(horizon)) {
+            LocalDate lastSnapshotDate = endDate.isAfter(horizon) ? horizon : endDate;
+
+            List<Object[]> rows = em.createNativeQuery("SELECT s.snapshot_date, s.balance FROM account_balance_snapshots s " +
+                    "WHERE s.account_id = :acctId AND s.snapshot_date BETWEEN :startDate AND :endDate ORDER BY s.snapshot_date")
+                    .setParameter("acctId", accountId)
+                    .setParameter("startDate", startDate)
+                    .setParameter("endDate", lastSnapshotDate)
+                    .getResultList();
+
+            for (Object[] row : rows) {
+                balances.put(((Date) row[0]).toLocalDate(), ((Number) row[1]).longValue());
+            }
+        }
+
+        if (endDate.isAfter(horizon)) {
+            // roll the transactions after the horizon forward from the balance at the start of the tail
+            LocalDate tailStart = startDate.isAfter(horizon) ? startDate.minusDays(1) : horizon;
+            long balance = getBalanceAsOf(accountId, tailStart);
+
+            for (SortedMap.Entry<LocalDate, Long> dailyTotal : getDailyTotals(accountId, tailStart, endDate).entrySet()) {
+                balance += dailyTotal.getValue();
+                balances.put(dailyTotal.getKey(), balance);
+            }
+        }
+
+        return balances;
+    }
+
+    /**
+     * Deletes all of the snapshots for the account
+     * @param accountId {@link UUID} of the account
+     * @return the number of snapshots deleted
+     */
+    @Transactional
+    public int deleteSnapshotsForAccount(UUID accountId) {
+        return em.createNativeQuery("DELETE FROM account_balance_snapshots WHERE account_id = :acctId")
+                .setParameter("acctId", accountId)
+                .executeUpdate();
+    }
+
+    /**
+     * Reads the horizon, locking its row until the transaction completes
+     * @param lockClause {@link String} holding the row locking clause, FOR SHARE or FOR UPDATE
+     * @return {@link LocalDate} of the horizon
+     */
+    private LocalDate lockHorizon(String lockClause) {
+        Date horizon = (Date) em.createNativeQuery("SELECT horizon FROM balance_snapshot_horizon WHERE id = 1 " + lockClause)
+                .getSingleResult();
+
+        return horizon.toLocalDate();
+    }
+
+    /**
+     * Returns whether the horizon has fallen more than {@link #maxTailDays} behind the database's current date
+     * @return true if the snapshots should be rolled forward
+     */
+    private boolean isHorizonStale() {
+        return (Boolean) em.createNativeQuery(HORIZON_IS_STALE)
+                .setParameter("maxTailDays", maxTailDays)
+                .getSingleResult();
+    }
+
+    /**
+     * Returns the latest snapshot for the account on or before the date
+     * @param accountId {@link UUID} of the account
+     * @param date {@link LocalDate} to look back from
+     * @return the balance in cents (0 if there is no snapshot)
+     */
+    @SuppressWarnings("unchecked")
+    private long getLatestSnapshot(UUID accountId, LocalDate date) {
+        List<Object> rows = em.createNativeQuery(LATEST_SNAPSHOT)
+                .setParameter("acctId", accountId)
+                .setParameter("date", date)
+                .getResultList();
+
+        return rows.isEmpty() ? 0 : ((Number) rows.get(0)).longValue();
+    }
+
+    /**
+     * Returns the confirmed total per day for the account over the interval (startDate, endDate]
+     * @param accountId {@link UUID} of the account
+     * @param startDate {@link LocalDate} the day before the interval
+     * @param endDate {@link LocalDate} of the last day of the interval
+     * @return {@link SortedMap} of date to total in cents
+     */
+    @SuppressWarnings("unchecked")
+    private SortedMap<LocalDate, Long> getDailyTotals(UUID accountId, LocalDate startDate, LocalDate endDate) {
+        List<Object[]> rows = em.createNativeQuery(DAILY_TOTALS)
+                .setParameter("acctId", accountId)
+                .setParameter("confirmed", Transaction.TransType.CONFIRMED.ordinal())
+                .setParameter("startDate", startDate)
+                .setParameter("endDate", endDate)
+                .getResultList();
+
+        SortedMap<LocalDate, Long> totals = new TreeMap<>();
+        for (Object[] row : rows) {
+            totals.put(((Date) row[0]).toLocalDate(), ((Number) row[1]).longValue());
+        }
+
+        return totals;
+    }
+}
@@ -0,0 +1,152 @@
+package com.sixtey7.fjservice.model.db;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Persists large lists of entities using one database transaction per chunk and
+ * Hibernate JDBC batching, rather than one transaction per row
+ */
+@Dependent
+public class BatchPersister {
+
+    /**
+     * Logger to be used for this class
+     */
+    private static final Logger LOGGER = LogManager.getLogger(BatchPersister.class);
+
+    /**
+     * Entity manager to be used for the inserts
+     */
+    @Inject
+    EntityManager em;
+
+    /**
+     * Number of rows to persist in a single database transaction
+     */
+    @ConfigProperty(name = "fjservice.persist.chunk-size", defaultValue = "1000")
+    int chunkSize;
+
+    /**
+     * Number of rows between each flush / clear of the persistence context, kept
+     * in line with the JDBC batch size so that each flush sends full batches
+     */
+    @ConfigProperty(name = "quarkus.hibernate-orm.jdbc.statement-batch-size", defaultValue = "50")
+    int flushInterval;
+
+    /**
+     * Persists all of the provided entities, one transaction per chunk.  If a chunk fails, its rows
+     * are retried one at a time so that the failing rows can be reported and the rest still stored
+     * @param entities {@link List} of entities to persist (ids must already be assigned)
+     * @param idOf {@link Function} used to get the id of an entity for reporting
+     * @param <T> the type of entity being persisted
+     * @return {@link BatchResult} capturing the persisted ids and any failed rows
+     */
+    public <T> BatchResult persistAll(List<T> entities, Function<T, UUID> idOf) {
+        BatchResult result = new BatchResult();
+
+        for (int chunkStart = 0; chunkStart < entities.size(); chunkStart += chunkSize) {
+            int chunkEnd = Math.min(chunkStart + chunkSize, entities.size());
+            List<T> chunk = entities.subList(chunkStart, chunkEnd);
+
+            try {
+                persistChunk(chunk);
+
+                for (T entity : chunk) {
+                    result.getPersistedIds().add(idOf.apply(entity).toString());
+                }
+            }
+            catch (Exception ex) {
+                LOGGER.warn("Failed to persist rows {} to {}, retrying them individually", chunkStart, chunkEnd - 1, ex);
+                result.addAll(persistIndividually(chunk, chunkStart, idOf));
+            }
+
+            LOGGER.debug("Persisted {} of {} rows", chunkEnd, entities.size());
+        }
+
+        return result;
+    }
+
+    /**
+     * Persists a single chunk of entities in its own transaction
+     * @param chunk {@link List} of entities to persist
+     * @param <T> the type of entity being persisted
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public <T> void persistChunk(List<T> chunk) {
+        for (int rowCounter = 0; rowCounter < chunk.size(); rowCounter++) {
+            em.persist(chunk.get(rowCounter));
+
+            // flush the batch and drop it from the persistence context so it doesn't grow with the chunk
+            if ((rowCounter + 1) % flushInterval == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+
+        em.flush();
+        em.clear();
+    }
+
+    /**
+     * Persists a single entity in its own transaction
+     * @param entity the entity to persist
+     * @param <T> the type of entity being persisted
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public <T> void persistOne(T entity) {
+        em.persist(entity);
+        em.flush();
+    }
+
+    /**
+     * Persists the rows of a failed chunk one at a time, recording the ones that fail
+     * @param chunk {@link List} of entities that failed as a chunk
+     * @param offset position of the first entity of the chunk in the original list
+     * @param idOf {@link Function} used to get the id of an entity for reporting
+     * @param <T> the type of entity being persisted
+     * @return {@link BatchResult} for the chunk
+     */
+    private <T> BatchResult persistIndividually(List<T> chunk, int offset, Function<T, UUID> idOf) {
+        BatchResult result = new BatchResult();
+
+        for (int rowCounter = 0; rowCounter < chunk.size(); rowCounter++) {
+            T entity = chunk.get(rowCounter);
+            String id = idOf.apply(entity).toString();
+
+            try {
+                persistOne(entity);
+                result.getPersistedIds().add(id);
+            }
+            catch (Exception ex) {
+                LOGGER.error("Failed to persist row {} ({})", offset + rowCounter, id, ex);
+                result.getFailures().add(new BatchResult.Failure(offset + rowCounter, id, rootMessage(ex)));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Digs out the most specific message from an exception chain
+     * @param ex {@link Throwable} to get the message from
+     * @return {@link String} message of the root cause
+     */
+    private String rootMessage(Throwable ex) {
+        Throwable cause = ex;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+
+        return cause.getMessage();
+    }
+}
@@ -0,0 +1,96 @@
+package com.sixtey7.fjservice.model.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Captures the outcome of a bulk persist, including the rows that could not be stored
+ */
+public class BatchResult {
+
+    /**
+     * UUIDs (in String form) of the rows that were persisted
+     */
+    private final List<String> persistedIds;
+
+    /**
+     * Rows that failed to persist
+     */
+    private final List<Failure> failures;
+
+    /**
+     * Default constructor
+     */
+    public BatchResult() {
+        this.persistedIds = new ArrayList<>();
+        this.failures = new ArrayList<>();
+    }
+
+    public List<String> getPersistedIds() {
+        return persistedIds;
+    }
+
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns whether or not every row was persisted
+     * @return true if there were no failures
+     */
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Folds the results of another batch into this one
+     * @param other {@link BatchResult} to merge in
+     */
+    public void addAll(BatchResult other) {
+        this.persistedIds.addAll(other.getPersistedIds());
+        this.failures.addAll(other.getFailures());
+    }
+
+    /**
+     * Details about a single row that failed to persist
+     */
+    public static class Failure {
+        /**
+         * Position of the row within the list that was provided
+         */
+        private final int row;
+
+        /**
+         * UUID (in String form) of the row that failed
+         */
+        private final String id;
+
+        /**
+         * Reason the row failed
+         */
+        private final String message;
+
+        public Failure(int row, String id, String message) {
+            this.row = row;
+            this.id = id;
+            this.message = message;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Row " + row + " (" + id + "): " + message;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.sixtey7.fjservice.model.db;
+
+import com.sixtey7.fjservice.model.Account;
+import com.sixtey7.fjservice.model.Transaction;
+import com.sixtey7.fjservice.utils.AccountTxCache;
+import com.sixtey7.fjservice.utils.VersionTracker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Loads parsed accounts and transactions into the database using the requested {@link LoadMode},
+ * falling back to the entity path when COPY is not available
+ */
+@Dependent
+public class BulkLoader {
+
+    /**
+     * Logger to be used for this class
+     */
+    private static final Logger LOGGER = LogManager.getLogger(BulkLoader.class);
+
+    /**
+     * DAO used for the entity path for accounts
+     */
+    @Inject
+    AccountDAO acctDao;
+
+    /**
+     * DAO used for the entity path for transactions
+     */
+    @Inject
+    TransactionDAO txDao;
+
+    /**
+     * Loader used for the COPY path
+     */
+    @Inject
+    CopyLoader copyLoader;
+
+    /**
+     * Cache of per-account transaction lists, which COPY bypasses
+     */
+    @Inject
+    AccountTxCache accountTxCache;
+
+    /**
+     * Version counters behind the ETags, which COPY bypasses
+     */
+    @Inject
+    VersionTracker versionTracker;
+
+    /**
+     * DAO for the daily balance snapshots, which are rebuilt in bulk after a load
+     */
+    @Inject
+    BalanceSnapshotDAO snapshotDAO;
+
+    /**
+     * Stores all of the provided accounts and transactions
+     * @param accounts {@link List} of {@link Account} to store
+     * @param transactions {@link List} of {@link Transaction} to store
+     * @param mode {@link LoadMode} requested by the client
+     * @return {@link BatchResult} capturing what was stored
+     */
+    public BatchResult storeAll(List<Account> accounts, List<Transaction> transactions, LoadMode mode) {
+        long startTime = System.nanoTime();
+        LoadMode actualMode = resolveMode(mode);
+
+        BatchResult result;
+        if (actualMode == LoadMode.COPY) {
+            assignIds(accounts, transactions);
+            copyLoader.loadAll(accounts, transactions);
+            acctDao.evictAllAccounts();
+            accountTxCache.invalidateAll();
+            versionTracker.allTransactionsChanged();
+
+            result = new BatchResult();
+            accounts.forEach(acct -> result.getPersistedIds().add(acct.getId().toString()));
+            transactions.forEach(tx -> result.getPersistedIds().add(tx.getId().toString()));
+        }
+        else {
+            result = acctDao.addAllAccounts(accounts);
+            result.addAll(txDao.addAllTransactions(transactions));
+        }
+
+        logThroughput(actualMode, result.getPersistedIds().size(), startTime);
+
+        if (!transactions.isEmpty()) {
+            snapshotDAO.rebuildSnapshots();
+        }
+
+        return result;
+    }
+
+    /**
+     * Stores all of the provided transactions
+     * @param transactions {@link List} of {@link Transaction} to store
+     * @param mode {@link LoadMode} requested by the client
+     * @return {@link BatchResult} capturing what was stored
+     */
+    public BatchResult storeTransactions(List<Transaction> transactions, LoadMode mode) {
+        return storeAll(Collections.emptyList(), transactions, mode);
+    }
+
+    /**
+     * Works out which mode will actually be used for the load
+     * @param mode {@link LoadMode} requested by the client
+     * @return {@link LoadMode} to use
+     */
+    private LoadMode resolveMode(LoadMode mode) {
+        if (mode == LoadMode.COPY && !copyLoader.isSupported()) {
+            LOGGER.warn("COPY was requested but the datasource is not PostgreSQL, falling back to JPA");
+            return LoadMode.JPA;
+        }
+
+        return mode;
+    }
+
+    /**
+     * Assigns ids to any rows that don't have one yet, as COPY bypasses the DAOs
+     * @param accounts {@link List} of {@link Account} to check
+     * @param transactions {@link List} of {@link Transaction} to check
+     */
+    private void assignIds(List<Account> accounts, List<Transaction> transactions) {
+        for (Account acct : accounts) {
+            if (acct.getId() == null) {
+                acct.setId(UUID.randomUUID());
+            }
+        }
+
+        for (Transaction tx : transactions) {
+            if (tx.getId() == null) {
+                tx.setId(UUID.randomUUID());
+            }
+        }
+    }
+
+    /**
+     * Logs the throughput of a load so that the modes can be compared
+     * @param mode {@link LoadMode} that was used
+     * @param rows the number of rows stored
+     * @param startTime {@link System#nanoTime()} when the load started
+     */
+    private void logThroughput(LoadMode mode, int rows, long startTime) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+        long rowsPerSecond = rows * 1000L / elapsedMillis;
+
+        LOGGER.info("Stored {} rows in {} ms using {} ({} rows/sec)", rows, elapsedMillis, mode, rowsPerSecond);
+    }
+}
@@ -0,0 +1,242 @@
+package com.sixtey7.fjservice.model.db;
+
+import com.sixtey7.fjservice.model.Account;
+import com.sixtey7.fjservice.model.Transaction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.persistence.PersistenceException;
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Loads accounts and transactions straight into their tables through the PostgreSQL COPY
+ * protocol, bypassing the entity manager entirely
+ */
+@Dependent
+public class CopyLoader {
+
+    /**
+     * Logger to be used for this class
+     */
+    private static final Logger LOGGER = LogManager.getLogger(CopyLoader.class);
+
+    /**
+     * COPY statement for a table shaped like accounts (columns match the {@link Account} mapping)
+     */
+    private static final String COPY_ACCOUNTS = "COPY %s (id, name, amount, notes, dynamic) FROM STDIN";
+
+    /**
+     * COPY statement for a table shaped like transactions (columns match the {@link Transaction} mapping)
+     */
+    private static final String COPY_TRANSACTIONS = "COPY %s (id, account_id, name, date, amount, type, notes) FROM STDIN";
+
+    /**
+     * Size of the buffer handed to the driver in a single write
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Datasource used to get a raw connection for the COPY
+     */
+    @Inject
+    DataSource dataSource;
+
+    /**
+     * Returns whether or not the configured datasource supports COPY
+     * @return true if the datasource is backed by the PostgreSQL driver
+     */
+    public boolean isSupported() {
+        try (Connection conn = dataSource.getConnection()) {
+            return conn.isWrapperFor(PGConnection.class);
+        }
+        catch (SQLException sqle) {
+            LOGGER.warn("Failed to check the datasource for COPY support", sqle);
+            return false;
+        }
+    }
+
+    /**
+     * Loads all of the provided accounts and transactions in a single database transaction
+     * @param accounts {@link List} of {@link Account} to load (may be empty)
+     * @param transactions {@link List} of {@link Transaction} to load (may be empty)
+     * @return the number of rows loaded
+     */
+    public long loadAll(List<Account> accounts, List<Transaction> transactions) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try {
+                long rows = copyAccounts(conn, "accounts", accounts);
+                rows += copyTransactions(conn, "transactions", transactions);
+
+                conn.commit();
+                return rows;
+            }
+            catch (SQLException sqle) {
+                conn.rollback();
+                throw sqle;
+            }
+            finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        catch (SQLException sqle) {
+            LOGGER.error("Failed to COPY data into the database", sqle);
+            throw new PersistenceException("Failed to COPY data into the database", sqle);
+        }
+    }
+
+    /**
+     * Streams the provided accounts into a table shaped like accounts, as part of whatever
+     * transaction the connection is in
+     * @param conn {@link Connection} to use, which must be backed by the PostgreSQL driver
+     * @param table name of the table to load
+     * @param accounts {@link List} of {@link Account} to load
+     * @return the number of rows loaded
+     * @throws SQLException if the COPY fails
+     */
+    public long copyAccounts(Connection conn, String table, List<Account> accounts) throws SQLException {
+        if (accounts.isEmpty()) {
+            return 0;
+        }
+
+        CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+        CopyIn copyIn = copyManager.copyIn(String.format(COPY_ACCOUNTS, table));
+        try {
+            StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+            for (Account acct : accounts) {
+                appendValue(buffer, acct.getId()).append('\t');
+                appendValue(buffer, acct.getName()).append('\t');
+                appendValue(buffer, acct.getAmountCents()).append('\t');
+                appendValue(buffer, acct.getNotes()).append('\t');
+                appendValue(buffer, acct.getDynamic()).append('\n');
+
+                writeIfFull(copyIn, buffer);
+            }
+            write(copyIn, buffer);
+
+            return copyIn.endCopy();
+        }
+        finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Streams the provided transactions into a table shaped like transactions, as part of whatever
+     * transaction the connection is in
+     * @param conn {@link Connection} to use, which must be backed by the PostgreSQL driver
+     * @param table name of the table to load
+     * @param transactions {@link List} of {@link Transaction} to load
+     * @return the number of rows loaded
+     * @throws SQLException if the COPY fails
+     */
+    public long copyTransactions(Connection conn, String table, List<Transaction> transactions) throws SQLException {
+        if (transactions.isEmpty()) {
+            return 0;
+        }
+
+        CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+        CopyIn copyIn = copyManager.copyIn(String.format(COPY_TRANSACTIONS, table));
+        try {
+            StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+            for (Transaction tx : transactions) {
+                appendValue(buffer, tx.getId()).append('\t');
+                appendValue(buffer, tx.getAccountId()).append('\t');
+                appendValue(buffer, tx.getName()).append('\t');
+                appendValue(buffer, tx.getDate()).append('\t');
+                appendValue(buffer, tx.getAmountCents()).append('\t');
+                // the type column is mapped by ordinal
+                appendValue(buffer, tx.getType() == null ? null : tx.getType().ordinal()).append('\t');
+                appendValue(buffer, tx.getNotes()).append('\n');
+
+                writeIfFull(copyIn, buffer);
+            }
+            write(copyIn, buffer);
+
+            return copyIn.endCopy();
+        }
+        finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Appends a single value in COPY text format, escaping the characters that have special meaning
+     * @param buffer {@link StringBuilder} to append to
+     * @param value the value to append (null is written as \N)
+     * @return the provided {@link StringBuilder}
+     */
+    private StringBuilder appendValue(StringBuilder buffer, Object value) {
+        if (value == null) {
+            return buffer.append("\\N");
+        }
+
+        if (value instanceof Boolean) {
+            return buffer.append((Boolean) value ? 't' : 'f');
+        }
+
+        String text = value.toString();
+        for (int charCounter = 0; charCounter < text.length(); charCounter++) {
+            char thisChar = text.charAt(charCounter);
+            switch (thisChar) {
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                default:
+                    buffer.append(thisChar);
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Hands the buffer to the driver once it has filled up
+     * @param copyIn {@link CopyIn} to write to
+     * @param buffer {@link StringBuilder} holding the pending rows
+     * @throws SQLException if the write fails
+     */
+    private void writeIfFull(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.length() >= BUFFER_SIZE) {
+            write(copyIn, buffer);
+        }
+    }
+
+    /**
+     * Hands the contents of the buffer to the driver and empties it
+     * @param copyIn {@link CopyIn} to write to
+     * @param buffer {@link StringBuilder} holding the pending rows
+     * @throws SQLException if the write fails
+     */
+    private void write(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+}
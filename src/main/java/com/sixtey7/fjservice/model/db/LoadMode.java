@@ -0,0 +1,34 @@
+package com.sixtey7.fjservice.model.db;
+
+/**
+ * Enumeration for the different ways rows can be bulk loaded into the database
+ */
+public enum LoadMode {
+    /**
+     * Rows are persisted through the entity manager in batched chunks
+     */
+    JPA,
+
+    /**
+     * Rows are streamed into the tables through the PostgreSQL COPY protocol
+     */
+    COPY;
+
+    /**
+     * Parses the load mode out of a query parameter (defaults to {@link #JPA})
+     * @param modeParam {@link String} value provided by the client, may be null
+     * @return {@link LoadMode} matching the parameter
+     */
+    public static LoadMode fromParam(String modeParam) {
+        if (modeParam == null || modeParam.isEmpty()) {
+            return JPA;
+        }
+
+        try {
+            return LoadMode.valueOf(modeParam.toUpperCase());
+        }
+        catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("Unknown load mode " + modeParam + ", expected jpa or copy");
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.sixtey7.fjservice.model.db;
+
+import com.sixtey7.fjservice.model.Account;
+import com.sixtey7.fjservice.model.Transaction;
+import com.sixtey7.fjservice.utils.AccountTxCache;
+import com.sixtey7.fjservice.utils.VersionTracker;
+import com.sixtey7.fjservice.utils.ImportProgress;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.sql.DataSource;
+import javax.transaction.Transactional;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Replaces the contents of the accounts and transactions tables in a single database transaction.  The
+ * new rows are loaded into temporary staging tables and checked first, then swapped in with one
+ * delete and insert per table along with the balances and snapshots.  Readers keep seeing the old
+ * rows until the commit, and a failure anywhere rolls the whole thing back, leaving the old rows in place.
+ * The rows are read and staged inside that transaction, so callers should give it a timeout long enough
+ * for the whole upload (see {@link com.sixtey7.fjservice.utils.TxTimeoutHelper})
+ */
+@Dependent
+public class StagingLoader {
+
+    /**
+     * Logger to be used for this class
+     */
+    private static final Logger LOGGER = LogManager.getLogger(StagingLoader.class);
+
+    /**
+     * Name of the staging table for accounts
+     */
+    private static final String ACCOUNTS_STAGING = "accounts_staging";
+
+    /**
+     * Name of the staging table for transactions
+     */
+    private static final String TRANSACTIONS_STAGING = "transactions_staging";
+
+    /**
+     * Insert statement used to stage accounts when COPY isn't used
+     */
+    private static final String INSERT_ACCOUNT = "INSERT INTO " + ACCOUNTS_STAGING + " (id, name, amount, notes, dynamic) VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * Insert statement used to stage transactions when COPY isn't used
+     */
+    private static final String INSERT_TRANSACTION = "INSERT INTO " + TRANSACTIONS_STAGING + " (id, account_id, name, date, amount, type, notes) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Counts the staged transactions that don't belong to an account in the provided table
+     */
+    private static final String COUNT_ORPHANS =
+            "SELECT COUNT(*) FROM " + TRANSACTIONS_STAGING + " t " +
+            "WHERE t.account_id IS NULL OR NOT EXISTS (SELECT 1 FROM %s a WHERE a.id = t.account_id)";
+
+    /**
+     * Entity manager used for the statements that run alongside the staging
+     */
+    @Inject
+    EntityManager em;
+
+    /**
+     * Datasource used to get the connection for the current transaction, which is shared with the entity manager
+     */
+    @Inject
+    DataSource dataSource;
+
+    /**
+     * Loader used to COPY into the staging tables
+     */
+    @Inject
+    CopyLoader copyLoader;
+
+    /**
+     * DAO used to recalculate the balances and clear the account caches
+     */
+    @Inject
+    AccountDAO acctDao;
+
+    /**
+     * DAO for the daily balance snapshots, rebuilt as part of the swap
+     */
+    @Inject
+    BalanceSnapshotDAO snapshotDAO;
+
+    /**
+     * Cache of per-account transaction lists, which the swap bypasses
+     */
+    @Inject
+    AccountTxCache accountTxCache;
+
+    /**
+     * Version counters behind the ETags, which the swap bypasses
+     */
+    @Inject
+    VersionTracker versionTracker;
+
+    /**
+     * Receives the rows to stage, in as many batches as the caller likes
+     */
+    public interface Sink {
+        /**
+         * Stages a batch of accounts
+         * @param accounts {@link List} of {@link Account} to stage
+         */
+        void addAccounts(List<Account> accounts);
+
+        /**
+         * Stages a batch of transactions
+         * @param transactions {@link List} of {@link Transaction} to stage
+         */
+        void addTransactions(List<Transaction> transactions);
+    }
+
+    /**
+     * Replaces all of the accounts and transactions with the provided ones
+     * @param accounts {@link List} of {@link Account} to load
+     * @param transactions {@link List} of {@link Transaction} to load
+     * @param mode {@link LoadMode} used to fill the staging tables
+     * @param progress {@link ImportProgress} to report to
+     * @return {@link Map} of account {@link UUID} to its new balance in cents
+     */
+    @Transactional
+    public Map<UUID, Long> replaceAll(List<Account> accounts, List<Transaction> transactions, LoadMode mode, ImportProgress progress) {
+        return replaceAll(mode, progress, sink -> {
+            sink.addAccounts(accounts);
+            sink.addTransactions(transactions);
+        });
+    }
+
+    /**
+     * Replaces all of the accounts and transactions with the ones the loader hands to the sink
+     * @param mode {@link LoadMode} used to fill the staging tables
+     * @param progress {@link ImportProgress} to report to
+     * @param loader {@link Consumer} that hands the rows to the {@link Sink}
+     * @return {@link Map} of account {@link UUID} to its new balance in cents
+     */
+    @Transactional
+    public Map<UUID, Long> replaceAll(LoadMode mode, ImportProgress progress, Consumer<Sink> loader) {
+        return replace(true, mode, progress, loader);
+    }
+
+    /**
+     * Replaces all of the transactions with the ones the loader hands to the sink, keeping the accounts
+     * @param mode {@link LoadMode} used to fill the staging tables
+     * @param progress {@link ImportProgress} to report to
+     * @param loader {@link Consumer} that hands the rows to the {@link Sink}
+     * @return {@link Map} of account {@link UUID} to its new balance in cents
+     */
+    @Transactional
+    public Map<UUID, Long> replaceTransactions(LoadMode mode, ImportProgress progress, Consumer<Sink> loader) {
+        return replace(false, mode, progress, loader);
+    }
+
+    /**
+     * Stages the rows, checks them and swaps them in.  Cancelling through the progress rolls
+     * everything back, as long as it happens before the swap starts
+     * @param includeAccounts whether the accounts are being replaced as well as the transactions
+     * @param mode {@link LoadMode} used to fill the staging tables
+     * @param progress {@link ImportProgress} to report to
+     * @param loader {@link Consumer} that hands the rows to the {@link Sink}
+     * @return {@link Map} of account {@link UUID} to its new balance in cents
+     */
+    private Map<UUID, Long> replace(boolean includeAccounts, LoadMode mode, ImportProgress progress, Consumer<Sink> loader) {
+        long startTime = System.nanoTime();
+        progress.setPhase(ImportProgress.Phase.PERSISTING);
+
+        if (includeAccounts) {
+            em.createNativeQuery("CREATE TEMP TABLE " + ACCOUNTS_STAGING + " (LIKE accounts INCLUDING DEFAULTS) ON COMMIT DROP").executeUpdate();
+        }
+        em.createNativeQuery("CREATE TEMP TABLE " + TRANSACTIONS_STAGING + " (LIKE transactions INCLUDING DEFAULTS) ON COMMIT DROP").executeUpdate();
+
+        // the connection is enlisted in the current transaction, so it's the one the entity manager is using
+        try (Connection conn = dataSource.getConnection()) {
+            boolean useCopy = mode == LoadMode.COPY && conn.isWrapperFor(PGConnection.class);
+            if (mode == LoadMode.COPY && !useCopy) {
+                LOGGER.warn("COPY was requested but the datasource is not PostgreSQL, staging with batched inserts");
+            }
+
+            loader.accept(new ConnectionSink(conn, includeAccounts, useCopy, progress));
+        }
+        catch (SQLException sqle) {
+            LOGGER.error("Failed to stage the import", sqle);
+            throw new PersistenceException("Failed to stage the import", sqle);
+        }
+
+        Number orphans = (Number) em.createNativeQuery(String.format(COUNT_ORPHANS, includeAccounts ? ACCOUNTS_STAGING : "accounts"))
+                .getSingleResult();
+        if (orphans.longValue() > 0) {
+            throw new IllegalArgumentException(orphans + " transactions do not belong to a known account");
+        }
+
+        progress.checkCancelled();
+        progress.setPhase(ImportProgress.Phase.FINALIZING);
+
+        em.createNativeQuery("DELETE FROM transactions").executeUpdate();
+        if (includeAccounts) {
+            em.createNativeQuery("DELETE FROM accounts").executeUpdate();
+            em.createNativeQuery("INSERT INTO accounts (id, name, amount, notes, dynamic) " +
+                    "SELECT id, name, amount, notes, dynamic FROM " + ACCOUNTS_STAGING).executeUpdate();
+        }
+        int txCount = em.createNativeQuery("INSERT INTO transactions (id, account_id, name, date, amount, type, notes) " +
+                "SELECT id, account_id, name, date, amount, type, notes FROM " + TRANSACTIONS_STAGING).executeUpdate();
+
+        Map<UUID, Long> balances = acctDao.recalculateAllBalances();
+        snapshotDAO.rebuildSnapshots();
+
+        // each of these clears again once the swap has committed
+        acctDao.evictAllAccounts();
+        accountTxCache.invalidateAll();
+        versionTracker.allTransactionsChanged();
+
+        long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        LOGGER.info("Staged and swapped in {} transactions in {} ms", txCount, elapsedMillis);
+
+        return balances;
+    }
+
+    /**
+     * {@link Sink} that writes straight into the staging tables on the connection for the current transaction
+     */
+    private class ConnectionSink implements Sink {
+
+        /**
+         * Connection for the current transaction
+         */
+        private final Connection conn;
+
+        /**
+         * Whether accounts are being staged
+         */
+        private final boolean includeAccounts;
+
+        /**
+         * Whether to COPY rather than insert
+         */
+        private final boolean useCopy;
+
+        /**
+         * Progress to report staged rows to
+         */
+        private final ImportProgress progress;
+
+        /**
+         * Constructor
+         * @param conn {@link Connection} for the current transaction
+         * @param includeAccounts whether accounts are being staged
+         * @param useCopy whether to COPY rather than insert
+         * @param progress {@link ImportProgress} to report staged rows to
+         */
+        ConnectionSink(Connection conn, boolean includeAccounts, boolean useCopy, ImportProgress progress) {
+            this.conn = conn;
+            this.includeAccounts = includeAccounts;
+            this.useCopy = useCopy;
+            this.progress = progress;
+        }
+
+        @Override
+        public void addAccounts(List<Account> accounts) {
+            if (!includeAccounts) {
+                throw new IllegalStateException("Accounts can't be staged when only replacing transactions");
+            }
+            progress.checkCancelled();
+
+            try {
+                for (Account acct : accounts) {
+                    if (acct.getId() == null) {
+                        acct.setId(UUID.randomUUID());
+                    }
+                }
+
+                if (useCopy) {
+                    copyLoader.copyAccounts(conn, ACCOUNTS_STAGING, accounts);
+                }
+                else {
+                    insertAccounts(accounts);
+                }
+                progress.addPersisted(accounts.size());
+            }
+            catch (SQLException sqle) {
+                throw new PersistenceException("Failed to stage " + accounts.size() + " accounts", sqle);
+            }
+        }
+
+        @Override
+        public void addTransactions(List<Transaction> transactions) {
+            progress.checkCancelled();
+
+            try {
+                for (Transaction tx : transactions) {
+                    if (tx.getId() == null) {
+                        tx.setId(UUID.randomUUID());
+                    }
+                }
+
+                if (useCopy) {
+                    copyLoader.copyTransactions(conn, TRANSACTIONS_STAGING, transactions);
+                }
+                else {
+                    insertTransactions(transactions);
+                }
+                progress.addPersisted(transactions.size());
+            }
+            catch (SQLException sqle) {
+                throw new PersistenceException("Failed to stage " + transactions.size() + " transactions", sqle);
+            }
+        }
+
+        /**
+         * Stages the accounts with a batched insert
+         * @param accounts {@link List} of {@link Account} to stage
+         * @throws SQLException if the insert fails
+         */
+        private void insertAccounts(List<Account> accounts) throws SQLException {
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_ACCOUNT)) {
+                for (Account acct : accounts) {
+                    ps.setObject(1, acct.getId());
+                    ps.setString(2, acct.getName());
+                    ps.setLong(3, acct.getAmountCents());
+                    ps.setString(4, acct.getNotes());
+                    ps.setObject(5, acct.getDynamic(), Types.BOOLEAN);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        /**
+         * Stages the transactions with a batched insert
+         * @param transactions {@link List} of {@link Transaction} to stage
+         * @throws SQLException if the insert fails
+         */
+        private void insertTransactions(List<Transaction> transactions) throws SQLException {
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_TRANSACTION)) {
+                for (Transaction tx : transactions) {
+                    ps.setObject(1, tx.getId());
+                    ps.setObject(2, tx.getAccountId());
+                    ps.setString(3, tx.getName());
+                    ps.setObject(4, tx.getDate(), Types.DATE);
+                    ps.setLong(5, tx.getAmountCents());
+                    // the type column is mapped by ordinal
+                    ps.setObject(6, tx.getType() == null ? null : tx.getType().ordinal(), Types.INTEGER);
+                    ps.setString(7, tx.getNotes());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+}
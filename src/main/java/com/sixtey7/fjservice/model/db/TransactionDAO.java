@@ -1,18 +1,40 @@
 package com.sixtey7.fjservice.model.db;
 
 import com.sixtey7.fjservice.model.Transaction;
+import com.sixtey7.fjservice.model.transport.LedgerEntry;
+import com.sixtey7.fjservice.model.transport.LedgerPage;
+import com.sixtey7.fjservice.model.transport.TxCursor;
+import com.sixtey7.fjservice.model.transport.TransactionDetailView;
+import com.sixtey7.fjservice.model.transport.TransactionView;
+import com.sixtey7.fjservice.model.transport.TxPage;
+import com.sixtey7.fjservice.utils.AccountTxCache;
+import com.sixtey7.fjservice.utils.VersionTracker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.FlushMode;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.LongType;
 
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
+import javax.persistence.TypedQuery;
 import javax.transaction.Transactional;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * DAO class for the Transactions table
@@ -26,11 +48,78 @@ public class TransactionDAO {
     @Inject
     private EntityManager em;
 
+    /**
+     * Used to persist transactions in bulk
+     */
+    @Inject
+    BatchPersister batchPersister;
+
+    /**
+     * Cache of per-account transaction lists that needs to be invalidated on writes
+     */
+    @Inject
+    AccountTxCache accountTxCache;
+
+    /**
+     * Version counters behind the ETags, bumped on every write
+     */
+    @Inject
+    VersionTracker versionTracker;
+
+    /**
+     * Number of rows to fetch from the database at a time when streaming
+     */
+    @ConfigProperty(name = "fjservice.export.fetch-size", defaultValue = "500")
+    int fetchSize;
+
     /**
      * Logger to be used for this class
      */
     private static final Logger LOGGER = LogManager.getLogger(TransactionDAO.class);
 
+    /**
+     * Constructor expression selecting a {@link TransactionView}, leaving out the notes
+     */
+    private static final String SELECT_VIEW =
+            "Select new com.sixtey7.fjservice.model.transport.TransactionView(t.id, t.accountId, t.name, t.date, t.amount, t.type) ";
+
+    /**
+     * Constructor expression selecting a {@link TransactionDetailView}, including the notes
+     */
+    private static final String SELECT_DETAIL_VIEW =
+            "Select new com.sixtey7.fjservice.model.transport.TransactionDetailView(t.id, t.accountId, t.name, t.date, t.amount, t.type, t.notes) ";
+
+    /**
+     * Ledger for an account, with the running confirmed and projected balances computed by window
+     * functions over the same (date, id) ordering used for keyset pagination, with the undated
+     * transactions first so that the last entry always matches the account balance.  The balances
+     * are calculated in the inner query so that the keyset filter doesn't change them
+     */
+    private static final String LEDGER_QUERY =
+            "SELECT l.id, l.account_id, l.name, l.date, l.amount, l.type, l.notes, l.confirmed_balance, l.projected_balance " +
+            "FROM (SELECT t.*, " +
+            "SUM(CASE WHEN t.type = :confirmed THEN t.amount ELSE 0 END) OVER running AS confirmed_balance, " +
+            "SUM(t.amount) OVER running AS projected_balance " +
+            "FROM transactions t " +
+            "WHERE t.account_id = :acctId " +
+            "WINDOW running AS (ORDER BY t.date NULLS FIRST, t.id ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW)) l ";
+
+    /**
+     * Keyset condition appended to {@link #LEDGER_QUERY} for every page after one that ended on a dated transaction
+     */
+    private static final String LEDGER_AFTER = "WHERE l.date > :afterDate OR (l.date = :afterDate AND l.id > :afterId) ";
+
+    /**
+     * Keyset condition appended to {@link #LEDGER_QUERY} for every page after one that ended on an
+     * undated transaction, which every dated transaction comes after
+     */
+    private static final String LEDGER_AFTER_UNDATED = "WHERE l.date IS NOT NULL OR l.id > :afterId ";
+
+    /**
+     * Ordering appended to {@link #LEDGER_QUERY}
+     */
+    private static final String LEDGER_ORDER = "ORDER BY l.date NULLS FIRST, l.id";
+
     /**
      * Returns all of the transactions in the database
      * @return {@link List} of {@link Transaction}
@@ -45,6 +134,157 @@ public class TransactionDAO {
         return returnList;
     }
 
+    /**
+     * Streams all of the transactions in the database to the provided consumer using a forward
+     * only cursor, detaching each one once it has been consumed so memory use stays flat
+     * @param consumer {@link Consumer} to hand each {@link Transaction} to
+     */
+    @Transactional
+    public void streamAllTransactions(Consumer<Transaction> consumer) {
+        LOGGER.debug("Streaming all transactions!");
+
+        streamQuery(em.createQuery("Select t from Transaction t", Transaction.class), consumer);
+    }
+
+    /**
+     * Streams a read-only view of every transaction in the database to the provided consumer
+     * @param includeNotes whether the views should include the notes
+     * @param consumer {@link Consumer} to hand each {@link TransactionView} to
+     */
+    @Transactional
+    public void streamAllTransactionViews(boolean includeNotes, Consumer<TransactionView> consumer) {
+        LOGGER.debug("Streaming views of all transactions");
+
+        streamViews(createViewQuery("", includeNotes), consumer);
+    }
+
+    /**
+     * Streams a read-only view of the transactions between the two provided dates to the provided consumer
+     * @param startDate {@link LocalDate} containing the first date of the interval
+     * @param endDate {@link LocalDate} containing the second date of the interval
+     * @param includeNotes whether the views should include the notes
+     * @param consumer {@link Consumer} to hand each {@link TransactionView} to
+     */
+    @Transactional
+    public void streamTxViewsBetweenDates(LocalDate startDate, LocalDate endDate, boolean includeNotes, Consumer<TransactionView> consumer) {
+        LOGGER.debug("Streaming views of transactions between {} and {}", startDate, endDate);
+
+        streamViews(createViewQuery("where t.date BETWEEN :strDate AND :endDate", includeNotes)
+                .setParameter("strDate", startDate)
+                .setParameter("endDate", endDate), consumer);
+    }
+
+    /**
+     * Streams a read-only view of the transactions newer than the provided date to the provided consumer
+     * @param startDate {@link LocalDate} to start the filter from
+     * @param includeNotes whether the views should include the notes
+     * @param consumer {@link Consumer} to hand each {@link TransactionView} to
+     */
+    @Transactional
+    public void streamTxViewsNewerThan(LocalDate startDate, boolean includeNotes, Consumer<TransactionView> consumer) {
+        LOGGER.debug("Streaming views of transactions newer than {}", startDate);
+
+        streamViews(createViewQuery("where t.date > :strDate", includeNotes)
+                .setParameter("strDate", startDate), consumer);
+    }
+
+    /**
+     * Returns a read-only view of the transactions mapped to the provided account id
+     * @param accountId String containing the UUID of the account
+     * @param includeNotes whether the views should include the notes
+     * @return {@link List} of {@link TransactionView} matching the provided account UUID
+     */
+    public List<TransactionView> getTxViewsForAccount(final String accountId, boolean includeNotes) {
+        LOGGER.debug("Getting views of all transactions for account {}", accountId);
+
+        List<TransactionView> returnViews = createViewQuery("where t.accountId = :acctId", includeNotes)
+                .setParameter("acctId", UUID.fromString(accountId))
+                .getResultList();
+
+        LOGGER.debug("Returning {} transactions", returnViews.size());
+        return returnViews;
+    }
+
+    /**
+     * Creates a query that builds the {@link TransactionView} directly from the selected columns, so the
+     * rows never become managed entities.  The query is also marked read-only and doesn't flush the
+     * session first, as nothing it returns can be changed
+     * @param condition JPQL where clause to add to the query, or an empty string
+     * @param includeNotes whether the views should include the notes
+     * @return {@link TypedQuery} for the views
+     */
+    private TypedQuery<TransactionView> createViewQuery(String condition, boolean includeNotes) {
+        String jpql = (includeNotes ? SELECT_DETAIL_VIEW : SELECT_VIEW) + "from Transaction t " + condition;
+
+        return em.createQuery(jpql, TransactionView.class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setHint(QueryHints.HINT_FLUSH_MODE, FlushMode.MANUAL);
+    }
+
+    /**
+     * Runs the view query with a forward only cursor, handing each view to the consumer.  Views aren't
+     * held by the session, so unlike {@link #streamQuery} there is nothing to detach
+     * @param query {@link TypedQuery} to run
+     * @param consumer {@link Consumer} to hand each {@link TransactionView} to
+     */
+    private void streamViews(TypedQuery<TransactionView> query, Consumer<TransactionView> consumer) {
+        try (Stream<TransactionView> viewStream = query
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .getResultStream()) {
+            viewStream.forEach(consumer);
+        }
+    }
+
+    /**
+     * Runs the query with a forward only cursor, handing each result to the consumer and then
+     * detaching it so memory use stays flat
+     * @param query {@link TypedQuery} to run
+     * @param consumer {@link Consumer} to hand each {@link Transaction} to
+     */
+    private void streamQuery(TypedQuery<Transaction> query, Consumer<Transaction> consumer) {
+        try (Stream<Transaction> txStream = query
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()) {
+            txStream.forEach(tx -> {
+                consumer.accept(tx);
+                em.detach(tx);
+            });
+        }
+    }
+
+    /**
+     * Streams the account id, date and amount (in cents) of every dated transaction that isn't CONFIRMED
+     * up to the end date, ordered by account then date, for the forecast
+     * @param accountId {@link UUID} of the account to restrict to (null for all accounts)
+     * @param endDate {@link LocalDate} of the last day to include
+     * @param consumer {@link Consumer} called with each account id / date / amount row
+     */
+    @Transactional
+    public void streamUnconfirmed(UUID accountId, LocalDate endDate, Consumer<Object[]> consumer) {
+        LOGGER.debug("Streaming unconfirmed transactions up to {} for account {}", endDate, accountId);
+
+        StringBuilder jpql = new StringBuilder("Select t.accountId, t.date, t.amount from Transaction t ");
+        jpql.append("where t.type <> :type and t.date is not null and t.date <= :endDate ");
+        if (accountId != null) {
+            jpql.append("and t.accountId = :acctId ");
+        }
+        jpql.append("order by t.accountId, t.date");
+
+        TypedQuery<Object[]> query = em.createQuery(jpql.toString(), Object[].class)
+                .setParameter("type", Transaction.TransType.CONFIRMED)
+                .setParameter("endDate", endDate)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true);
+        if (accountId != null) {
+            query.setParameter("acctId", accountId);
+        }
+
+        try (Stream<Object[]> rowStream = query.getResultStream()) {
+            rowStream.forEach(consumer);
+        }
+    }
+
     /**
      * Returns the data for the specified {@link Transaction}
      * @param transId String containing the UUID of the {@link Transaction}
@@ -63,6 +303,23 @@ public class TransactionDAO {
         }
     }
 
+    /**
+     * Returns the transactions with the provided ids, in a single query
+     * @param transIds {@link Collection} of transaction {@link UUID}
+     * @return {@link List} of the {@link Transaction} that were found
+     */
+    public List<Transaction> getTransactions(Collection<UUID> transIds) {
+        LOGGER.debug("Getting {} transactions by id", transIds.size());
+
+        if (transIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return em.createQuery("Select t from Transaction t where t.id in :transIds", Transaction.class)
+                .setParameter("transIds", transIds)
+                .getResultList();
+    }
+
     /**
      * Returns all of the transactions in the database between the two provided values
      * @param startDate {@link LocalDate} containing the first date of the interval
@@ -109,13 +366,190 @@ public class TransactionDAO {
         LOGGER.debug("Getting all transaction for account {}", accountId);
 
         List<Transaction> returnTxs = em.createQuery("Select t from Transaction t where t.accountId = :acctId" , Transaction.class)
-                .setParameter("acctId", accountId)
+                .setParameter("acctId", UUID.fromString(accountId))
                 .getResultList();
 
         LOGGER.debug("Returning {} transactions", returnTxs);
         return returnTxs;
     }
 
+    /**
+     * Returns a single page of all of the transactions in the database
+     * @param after {@link TxCursor} of the last transaction of the previous page (null for the first page)
+     * @param limit the maximum number of transactions to return
+     * @param includeNotes whether the transactions should include the notes
+     * @return {@link TxPage} containing the transactions
+     */
+    public TxPage getAllTransactionsPage(TxCursor after, int limit, boolean includeNotes) {
+        LOGGER.debug("Getting a page of {} transactions", limit);
+
+        return getTxPage("", Collections.emptyMap(), after, limit, includeNotes);
+    }
+
+    /**
+     * Returns a single page of the transactions between the two provided values
+     * @param startDate {@link LocalDate} containing the first date of the interval
+     * @param endDate {@link LocalDate} containing the second date of the interval
+     * @param after {@link TxCursor} of the last transaction of the previous page (null for the first page)
+     * @param limit the maximum number of transactions to return
+     * @param includeNotes whether the transactions should include the notes
+     * @return {@link TxPage} containing the transactions
+     */
+    public TxPage getTxBetweenDatesPage(LocalDate startDate, LocalDate endDate, TxCursor after, int limit, boolean includeNotes) {
+        LOGGER.debug("Getting a page of {} transactions between {} and {}", limit, startDate, endDate);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("strDate", startDate);
+        params.put("endDate", endDate);
+
+        return getTxPage("t.date BETWEEN :strDate AND :endDate", params, after, limit, includeNotes);
+    }
+
+    /**
+     * Returns a single page of the transactions newer than the provided date
+     * @param startDate {@link LocalDate} to start the filter from
+     * @param after {@link TxCursor} of the last transaction of the previous page (null for the first page)
+     * @param limit the maximum number of transactions to return
+     * @param includeNotes whether the transactions should include the notes
+     * @return {@link TxPage} containing the transactions
+     */
+    public TxPage getTxNewerThanPage(LocalDate startDate, TxCursor after, int limit, boolean includeNotes) {
+        LOGGER.debug("Getting a page of {} transactions newer than {}", limit, startDate);
+
+        return getTxPage("t.date > :strDate", Collections.singletonMap("strDate", startDate), after, limit, includeNotes);
+    }
+
+    /**
+     * Returns a single page of the transactions mapped to the provided account id
+     * @param accountId String containing the UUID of the account
+     * @param after {@link TxCursor} of the last transaction of the previous page (null for the first page)
+     * @param limit the maximum number of transactions to return
+     * @param includeNotes whether the transactions should include the notes
+     * @return {@link TxPage} containing the transactions
+     */
+    public TxPage getTxForAccountPage(final String accountId, TxCursor after, int limit, boolean includeNotes) {
+        LOGGER.debug("Getting a page of {} transactions for account {}", limit, accountId);
+
+        return getTxPage("t.accountId = :acctId", Collections.singletonMap("acctId", UUID.fromString(accountId)), after, limit, includeNotes);
+    }
+
+    /**
+     * Runs a keyset paginated query over read-only views of the transactions, ordered by date then id.  Transactions
+     * without a date come first, so paging returns the same transactions as the unpaged listings
+     * @param filter JPQL condition to restrict the transactions, or an empty string
+     * @param params {@link Map} of the parameters used by the filter
+     * @param after {@link TxCursor} of the last transaction of the previous page (null for the first page)
+     * @param limit the maximum number of transactions to return
+     * @param includeNotes whether the transactions should include the notes
+     * @return {@link TxPage} containing the transactions
+     */
+    private TxPage getTxPage(String filter, Map<String, Object> params, TxCursor after, int limit, boolean includeNotes) {
+        List<String> conditions = new ArrayList<>();
+        if (!filter.isEmpty()) {
+            conditions.add(filter);
+        }
+        if (after != null && after.getDate() == null) {
+            // every dated transaction comes after the undated ones
+            conditions.add("(t.date is not null or t.id > :afterId)");
+        }
+        else if (after != null) {
+            conditions.add("(t.date > :afterDate or (t.date = :afterDate and t.id > :afterId))");
+        }
+
+        String jpql = (conditions.isEmpty() ? "" : "where " + String.join(" and ", conditions) + " ")
+                + "order by t.date nulls first, t.id";
+
+        TypedQuery<TransactionView> query = createViewQuery(jpql, includeNotes);
+        params.forEach(query::setParameter);
+        if (after != null) {
+            if (after.getDate() != null) {
+                query.setParameter("afterDate", after.getDate());
+            }
+            query.setParameter("afterId", after.getId());
+        }
+
+        // grab one extra row to find out if there is another page
+        List<TransactionView> results = query.setMaxResults(limit + 1).getResultList();
+
+        TxPage page = new TxPage();
+        if (results.size() > limit) {
+            results = results.subList(0, limit);
+
+            TransactionView last = results.get(limit - 1);
+            page.setNext(new TxCursor(last.getDate(), last.getId()).encode());
+        }
+        page.setTransactions(results);
+
+        LOGGER.debug("Returning {} transactions", results.size());
+        return page;
+    }
+
+    /**
+     * Returns a single page of the ledger for the indicated account: its transactions ordered by
+     * date then id, each with the running confirmed and projected balance of the account
+     * @param accountId String containing the UUID of the account
+     * @param after {@link TxCursor} of the last transaction of the previous page (null for the first page)
+     * @param limit the maximum number of entries to return
+     * @return {@link LedgerPage} containing the entries
+     */
+    @SuppressWarnings("unchecked")
+    public LedgerPage getLedgerPage(final String accountId, TxCursor after, int limit) {
+        LOGGER.debug("Getting a page of {} ledger entries for account {}", limit, accountId);
+
+        String keyset = "";
+        if (after != null) {
+            keyset = after.getDate() == null ? LEDGER_AFTER_UNDATED : LEDGER_AFTER;
+        }
+        String sql = LEDGER_QUERY + keyset + LEDGER_ORDER;
+
+        NativeQuery<Object[]> query = em.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addEntity("l", Transaction.class)
+                .addScalar("confirmed_balance", LongType.INSTANCE)
+                .addScalar("projected_balance", LongType.INSTANCE);
+
+        query.setParameter("confirmed", Transaction.TransType.CONFIRMED.ordinal());
+        query.setParameter("acctId", UUID.fromString(accountId));
+        if (after != null) {
+            if (after.getDate() != null) {
+                query.setParameter("afterDate", after.getDate());
+            }
+            query.setParameter("afterId", after.getId());
+        }
+
+        // grab one extra row to find out if there is another page
+        List<Object[]> rows = query.setMaxResults(limit + 1).getResultList();
+
+        LedgerPage page = new LedgerPage();
+        for (Object[] row : rows.subList(0, Math.min(limit, rows.size()))) {
+            page.getEntries().add(new LedgerEntry((Transaction) row[0], (Long) row[1], (Long) row[2]));
+        }
+
+        if (rows.size() > limit) {
+            Transaction last = page.getEntries().get(limit - 1).getTransaction();
+            page.setNext(new TxCursor(last.getDate(), last.getId()).encode());
+        }
+
+        LOGGER.debug("Returning {} ledger entries", page.getEntries().size());
+        return page;
+    }
+
+    /**
+     * Returns the sum of the CONFIRMED transactions for the indicated account
+     * @param accountId {@link UUID} of the account
+     * @return the confirmed balance of the account in cents (0 if it has no confirmed transactions)
+     */
+    public long sumConfirmedForAccount(UUID accountId) {
+        LOGGER.debug("Summing confirmed transactions for account {}", accountId);
+
+        Long sum = em.createQuery("Select sum(t.amount) from Transaction t where t.accountId = :acctId and t.type = :type", Long.class)
+                .setParameter("acctId", accountId)
+                .setParameter("type", Transaction.TransType.CONFIRMED)
+                .getSingleResult();
+
+        return sum == null ? 0 : sum;
+    }
+
     /**
      * Adds the provided {@link Transaction} to the database
      * @param txToAdd {@link Transaction} to be persisted
@@ -138,27 +572,33 @@ public class TransactionDAO {
             LOGGER.error("Failed to persist transaction", ex);
         }
 
+        accountTxCache.invalidate(txToAdd.getAccountId());
+        versionTracker.transactionsChanged(txToAdd.getAccountId());
+
         return txToAdd.getId().toString();
     }
 
     /**
-     * Adds all of the provided transactions
+     * Adds all of the provided transactions, one database transaction per chunk
      * @param txsToPersist {@link List} of {@link Transaction} that are to be persisted
-     * @return {@link List} of Strings containing the UUIDs that were persisted
+     * @return {@link BatchResult} containing the UUIDs that were persisted and any rows that failed
      */
-    public List<String> addAllTransactions(List<Transaction> txsToPersist) {
+    public BatchResult addAllTransactions(List<Transaction> txsToPersist) {
         LOGGER.debug("Saving {} transactions", txsToPersist.size());
 
-        List<String> returnList = new ArrayList<>(txsToPersist.size());
+        for (Transaction tx : txsToPersist) {
+            if (tx.getId() == null) {
+                tx.setId(UUID.randomUUID());
+            }
+        }
 
-        txsToPersist.forEach(tx -> {
-            // This is technically risky as null could be returned above, but that'll never happen
-                // Famous last words...
-            returnList.add(this.addTransaction(tx));
-        });
+        BatchResult result = batchPersister.persistAll(txsToPersist, Transaction::getId);
+        Set<UUID> accountIds = txsToPersist.stream().map(Transaction::getAccountId).collect(Collectors.toSet());
+        accountTxCache.invalidate(accountIds);
+        versionTracker.transactionsChanged(accountIds);
 
-        LOGGER.debug("Added {} transactions", returnList.size());
-        return returnList;
+        LOGGER.debug("Added {} transactions, {} failed", result.getPersistedIds().size(), result.getFailures().size());
+        return result;
     }
 
     /**
@@ -170,6 +610,13 @@ public class TransactionDAO {
     public boolean updateTransaction(Transaction txToUpdate) {
         LOGGER.debug("Updating transaction {}", txToUpdate.getId().toString());
 
+        // the transaction may be moving, so the cached list for the old account needs to go too
+        Transaction previous = em.find(Transaction.class, txToUpdate.getId());
+        if (previous != null) {
+            accountTxCache.invalidate(previous.getAccountId());
+            versionTracker.transactionsChanged(previous.getAccountId());
+        }
+
         try {
             em.merge(txToUpdate);
         }
@@ -178,6 +625,9 @@ public class TransactionDAO {
             return false;
         }
 
+        accountTxCache.invalidate(txToUpdate.getAccountId());
+        versionTracker.transactionsChanged(txToUpdate.getAccountId());
+
         return true;
     }
 
@@ -192,6 +642,12 @@ public class TransactionDAO {
 
         UUID idAsUUID = UUID.fromString(idToDelete);
 
+        Transaction previous = em.find(Transaction.class, idAsUUID);
+        if (previous != null) {
+            accountTxCache.invalidate(previous.getAccountId());
+            versionTracker.transactionsChanged(previous.getAccountId());
+        }
+
         int returnValue = em.createQuery("Delete from Transaction t where t.id = :transId")
                 .setParameter("transId", idAsUUID)
                 .executeUpdate();
@@ -210,6 +666,8 @@ public class TransactionDAO {
         LOGGER.debug("Deleting all transactions!");
 
         int returnValue = em.createQuery("Delete from Transaction t").executeUpdate();
+        accountTxCache.invalidateAll();
+        versionTracker.allTransactionsChanged();
 
         LOGGER.debug("Deleted {} transactions", returnValue);
 
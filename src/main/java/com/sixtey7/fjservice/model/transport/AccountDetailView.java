@@ -0,0 +1,35 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.sixtey7.fjservice.model.Account;
+
+import java.util.UUID;
+
+/**
+ * Read-only view of an account that includes its notes, which serializes the same as the
+ * {@link Account} entity
+ */
+@JsonPropertyOrder({"id", "name", "amount", "notes", "dynamic"})
+public class AccountDetailView extends AccountView {
+    /**
+     * Notes on the account
+     */
+    private final String notes;
+
+    /**
+     * Constructor, called by the JPQL constructor expressions in the DAO
+     * @param id {@link UUID} of the account
+     * @param name {@link String} name of the account
+     * @param amount balance in cents
+     * @param notes {@link String} notes on the account
+     * @param dynamic whether the balance is entered by hand
+     */
+    public AccountDetailView(UUID id, String name, long amount, String notes, Boolean dynamic) {
+        super(id, name, amount, dynamic);
+        this.notes = notes;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+}
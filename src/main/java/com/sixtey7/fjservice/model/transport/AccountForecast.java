@@ -0,0 +1,128 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.sixtey7.fjservice.model.converter.LocalDateSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Class used to capture the projected balance of an account once its outstanding transactions land
+ */
+public class AccountForecast {
+    /**
+     * Id of the account
+     */
+    private UUID accountId;
+
+    /**
+     * Name of the account
+     */
+    private String name;
+
+    /**
+     * Current balance of the account
+     */
+    private BigDecimal startBalance;
+
+    /**
+     * Projected balance at the end of the forecast
+     */
+    private BigDecimal endBalance;
+
+    /**
+     * Lowest projected balance over the forecast
+     */
+    private BigDecimal minBalance;
+
+    /**
+     * First day the lowest projected balance is reached
+     */
+    @JsonSerialize(using = LocalDateSerializer.class)
+    private LocalDate minBalanceDate;
+
+    /**
+     * First day the projected balance drops below the threshold (null if it never does)
+     */
+    @JsonSerialize(using = LocalDateSerializer.class)
+    private LocalDate firstBelowThreshold;
+
+    /**
+     * Projected balance at the end of each day it changes (only filled in when asked for)
+     */
+    private List<BalancePoint> balances;
+
+    /**
+     * Default constructor
+     */
+    public AccountForecast() {
+        this.balances = new ArrayList<>();
+    }
+
+    public UUID getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(UUID accountId) {
+        this.accountId = accountId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public BigDecimal getStartBalance() {
+        return startBalance;
+    }
+
+    public void setStartBalance(BigDecimal startBalance) {
+        this.startBalance = startBalance;
+    }
+
+    public BigDecimal getEndBalance() {
+        return endBalance;
+    }
+
+    public void setEndBalance(BigDecimal endBalance) {
+        this.endBalance = endBalance;
+    }
+
+    public BigDecimal getMinBalance() {
+        return minBalance;
+    }
+
+    public void setMinBalance(BigDecimal minBalance) {
+        this.minBalance = minBalance;
+    }
+
+    public LocalDate getMinBalanceDate() {
+        return minBalanceDate;
+    }
+
+    public void setMinBalanceDate(LocalDate minBalanceDate) {
+        this.minBalanceDate = minBalanceDate;
+    }
+
+    public LocalDate getFirstBelowThreshold() {
+        return firstBelowThreshold;
+    }
+
+    public void setFirstBelowThreshold(LocalDate firstBelowThreshold) {
+        this.firstBelowThreshold = firstBelowThreshold;
+    }
+
+    public List<BalancePoint> getBalances() {
+        return balances;
+    }
+
+    public void setBalances(List<BalancePoint> balances) {
+        this.balances = balances;
+    }
+}
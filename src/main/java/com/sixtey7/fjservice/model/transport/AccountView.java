@@ -0,0 +1,74 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.sixtey7.fjservice.model.Account;
+import com.sixtey7.fjservice.utils.MoneyHelper;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Read-only view of an account used by the listing endpoints, built straight from the query
+ * results rather than loaded as an entity.  This view leaves out the notes, see
+ * {@link AccountDetailView} for the view that includes them
+ */
+public class AccountView {
+    /**
+     * Id of the account
+     */
+    private final UUID id;
+
+    /**
+     * Name of the account
+     */
+    private final String name;
+
+    /**
+     * Balance of the account in cents
+     */
+    private final long amount;
+
+    /**
+     * Whether the balance is entered by hand rather than calculated
+     */
+    private final Boolean dynamic;
+
+    /**
+     * Constructor, called by the JPQL constructor expressions in the DAO
+     * @param id {@link UUID} of the account
+     * @param name {@link String} name of the account
+     * @param amount balance in cents
+     * @param dynamic whether the balance is entered by hand
+     */
+    public AccountView(UUID id, String name, long amount, Boolean dynamic) {
+        this.id = id;
+        this.name = name;
+        this.amount = amount;
+        this.dynamic = dynamic;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the balance in dollars, matching the JSON written for an {@link Account}
+     * @return the balance in dollars
+     */
+    public BigDecimal getAmount() {
+        return MoneyHelper.toDecimal(amount);
+    }
+
+    @JsonIgnore
+    public long getAmountCents() {
+        return amount;
+    }
+
+    public Boolean getDynamic() {
+        return dynamic;
+    }
+}
@@ -0,0 +1,55 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.sixtey7.fjservice.model.converter.LocalDateSerializer;
+import com.sixtey7.fjservice.utils.MoneyHelper;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Class used to capture the balance of an account at the end of a day
+ */
+public class BalancePoint {
+    /**
+     * The day the balance is for
+     */
+    @JsonSerialize(using = LocalDateSerializer.class)
+    private LocalDate date;
+
+    /**
+     * The confirmed balance at the end of the day
+     */
+    private BigDecimal balance;
+
+    /**
+     * Default constructor
+     */
+    public BalancePoint() { }
+
+    /**
+     * Constructor
+     * @param date {@link LocalDate} the balance is for
+     * @param balance the balance in cents
+     */
+    public BalancePoint(LocalDate date, long balance) {
+        this.date = date;
+        this.balance = MoneyHelper.toDecimal(balance);
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+}
@@ -0,0 +1,102 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.sixtey7.fjservice.model.converter.LocalDateSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Class used to capture how the balance of an account moved over a range of dates
+ */
+public class BalanceRange {
+    /**
+     * Id of the account
+     */
+    private UUID accountId;
+
+    /**
+     * First day of the range
+     */
+    @JsonSerialize(using = LocalDateSerializer.class)
+    private LocalDate startDate;
+
+    /**
+     * Last day of the range
+     */
+    @JsonSerialize(using = LocalDateSerializer.class)
+    private LocalDate endDate;
+
+    /**
+     * Confirmed balance going into the first day of the range
+     */
+    private BigDecimal openingBalance;
+
+    /**
+     * Confirmed balance at the end of the last day of the range
+     */
+    private BigDecimal closingBalance;
+
+    /**
+     * Balance at the end of each day in the range that it changed
+     */
+    private List<BalancePoint> balances;
+
+    /**
+     * Default constructor
+     */
+    public BalanceRange() {
+        this.balances = new ArrayList<>();
+    }
+
+    public UUID getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(UUID accountId) {
+        this.accountId = accountId;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public BigDecimal getOpeningBalance() {
+        return openingBalance;
+    }
+
+    public void setOpeningBalance(BigDecimal openingBalance) {
+        this.openingBalance = openingBalance;
+    }
+
+    public BigDecimal getClosingBalance() {
+        return closingBalance;
+    }
+
+    public void setClosingBalance(BigDecimal closingBalance) {
+        this.closingBalance = closingBalance;
+    }
+
+    public List<BalancePoint> getBalances() {
+        return balances;
+    }
+
+    public void setBalances(List<BalancePoint> balances) {
+        this.balances = balances;
+    }
+}
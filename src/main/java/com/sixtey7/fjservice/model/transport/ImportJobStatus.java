@@ -0,0 +1,159 @@
+package com.sixtey7.fjservice.model.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class used to capture the state of a background import
+ */
+public class ImportJobStatus {
+    /**
+     * Id of the job
+     */
+    private String id;
+
+    /**
+     * What the job is importing
+     */
+    private String description;
+
+    /**
+     * Stage the job has reached
+     */
+    private String phase;
+
+    /**
+     * When the job was submitted (ISO-8601)
+     */
+    private String submittedAt;
+
+    /**
+     * When the job started running (ISO-8601, null while queued)
+     */
+    private String startedAt;
+
+    /**
+     * When the job finished (ISO-8601, null while running)
+     */
+    private String finishedAt;
+
+    /**
+     * Number of rows parsed so far
+     */
+    private long rowsParsed;
+
+    /**
+     * Number of rows written to the database so far
+     */
+    private long rowsPersisted;
+
+    /**
+     * Rows written per second since the job started
+     */
+    private long rowsPerSecond;
+
+    /**
+     * Whether cancellation has been requested
+     */
+    private boolean cancelRequested;
+
+    /**
+     * Errors hit by the job
+     */
+    private List<String> errors;
+
+    /**
+     * Default constructor
+     */
+    public ImportJobStatus() {
+        this.errors = new ArrayList<>();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public void setPhase(String phase) {
+        this.phase = phase;
+    }
+
+    public String getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(String submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(String startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(String finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed;
+    }
+
+    public void setRowsParsed(long rowsParsed) {
+        this.rowsParsed = rowsParsed;
+    }
+
+    public long getRowsPersisted() {
+        return rowsPersisted;
+    }
+
+    public void setRowsPersisted(long rowsPersisted) {
+        this.rowsPersisted = rowsPersisted;
+    }
+
+    public long getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(long rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    public void setCancelRequested(boolean cancelRequested) {
+        this.cancelRequested = cancelRequested;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+}
@@ -0,0 +1,66 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.sixtey7.fjservice.model.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class used to capture the outcome of a streamed import.  The accounts are returned in full, but
+ * the transactions are only counted so that the response doesn't grow with the file
+ */
+public class ImportSummary {
+    /**
+     * Accounts that were imported (empty if only transactions were imported)
+     */
+    private List<Account> accounts;
+
+    /**
+     * Number of transactions that were imported
+     */
+    private long transactionCount;
+
+    /**
+     * holds whether or not the import was a success
+     */
+    private boolean success;
+
+    /**
+     * Default constructor
+     */
+    public ImportSummary() {
+        this.accounts = new ArrayList<>();
+    }
+
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+
+    public void setAccounts(List<Account> accounts) {
+        this.accounts = accounts;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public void setTransactionCount(long transactionCount) {
+        this.transactionCount = transactionCount;
+    }
+
+    /**
+     * Adds to the number of transactions that were imported
+     * @param count number of transactions to add
+     */
+    public void addTransactions(long count) {
+        this.transactionCount += count;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+}
@@ -0,0 +1,67 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.sixtey7.fjservice.model.Transaction;
+import com.sixtey7.fjservice.utils.MoneyHelper;
+
+import java.math.BigDecimal;
+
+/**
+ * Class used to capture a single transaction along with the running balances of its account
+ */
+public class LedgerEntry {
+    /**
+     * The transaction for this line of the ledger
+     */
+    private Transaction transaction;
+
+    /**
+     * Sum of the CONFIRMED transactions up to and including this one
+     */
+    private BigDecimal confirmedBalance;
+
+    /**
+     * Sum of all of the transactions, whatever their type, up to and including this one
+     */
+    private BigDecimal projectedBalance;
+
+    /**
+     * Default constructor
+     */
+    public LedgerEntry() { }
+
+    /**
+     * Constructor
+     * @param transaction {@link Transaction} for this line of the ledger
+     * @param confirmedBalance running confirmed balance in cents
+     * @param projectedBalance running projected balance in cents
+     */
+    public LedgerEntry(Transaction transaction, long confirmedBalance, long projectedBalance) {
+        this.transaction = transaction;
+        this.confirmedBalance = MoneyHelper.toDecimal(confirmedBalance);
+        this.projectedBalance = MoneyHelper.toDecimal(projectedBalance);
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public void setTransaction(Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    public BigDecimal getConfirmedBalance() {
+        return confirmedBalance;
+    }
+
+    public void setConfirmedBalance(BigDecimal confirmedBalance) {
+        this.confirmedBalance = confirmedBalance;
+    }
+
+    public BigDecimal getProjectedBalance() {
+        return projectedBalance;
+    }
+
+    public void setProjectedBalance(BigDecimal projectedBalance) {
+        this.projectedBalance = projectedBalance;
+    }
+}
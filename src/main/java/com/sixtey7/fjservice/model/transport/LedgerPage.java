@@ -0,0 +1,42 @@
+package com.sixtey7.fjservice.model.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class used to capture a single page of an account's ledger
+ */
+public class LedgerPage {
+    /**
+     * Entries on this page, ordered by date then id
+     */
+    private List<LedgerEntry> entries;
+
+    /**
+     * Cursor to request the next page with (null if this is the last page)
+     */
+    private String next;
+
+    /**
+     * Default constructor
+     */
+    public LedgerPage() {
+        this.entries = new ArrayList<>();
+    }
+
+    public List<LedgerEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<LedgerEntry> entries) {
+        this.entries = entries;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
@@ -0,0 +1,37 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.sixtey7.fjservice.model.Transaction;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Read-only view of a transaction that includes its notes, which serializes the same as the
+ * {@link Transaction} entity
+ */
+public class TransactionDetailView extends TransactionView {
+    /**
+     * Notes on the transaction
+     */
+    private final String notes;
+
+    /**
+     * Constructor, called by the JPQL constructor expressions in the DAO
+     * @param id {@link UUID} of the transaction
+     * @param accountId {@link UUID} of the account
+     * @param name {@link String} name of the transaction
+     * @param date {@link LocalDate} of the transaction
+     * @param amount amount in cents
+     * @param type {@link Transaction.TransType} of the transaction
+     * @param notes {@link String} notes on the transaction
+     */
+    public TransactionDetailView(UUID id, UUID accountId, String name, LocalDate date, long amount, Transaction.TransType type,
+                                 String notes) {
+        super(id, accountId, name, date, amount, type);
+        this.notes = notes;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+}
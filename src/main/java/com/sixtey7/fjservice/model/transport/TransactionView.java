@@ -0,0 +1,101 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.sixtey7.fjservice.model.Transaction;
+import com.sixtey7.fjservice.model.converter.LocalDateSerializer;
+import com.sixtey7.fjservice.utils.MoneyHelper;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Read-only view of a transaction used by the listing endpoints.  Views are built straight from
+ * the query results rather than loaded as entities, so Hibernate doesn't keep a copy of each row
+ * to dirty check.  This view leaves out the notes, see {@link TransactionDetailView} for the
+ * view that includes them
+ */
+public class TransactionView {
+    /**
+     * Id of the transaction
+     */
+    private final UUID id;
+
+    /**
+     * Id of the account the transaction belongs to
+     */
+    private final UUID accountId;
+
+    /**
+     * Name of the transaction
+     */
+    private final String name;
+
+    /**
+     * Date of the transaction
+     */
+    private final LocalDate date;
+
+    /**
+     * Amount of the transaction in cents
+     */
+    private final long amount;
+
+    /**
+     * Type of the transaction
+     */
+    private final Transaction.TransType type;
+
+    /**
+     * Constructor, called by the JPQL constructor expressions in the DAO
+     * @param id {@link UUID} of the transaction
+     * @param accountId {@link UUID} of the account
+     * @param name {@link String} name of the transaction
+     * @param date {@link LocalDate} of the transaction
+     * @param amount amount in cents
+     * @param type {@link Transaction.TransType} of the transaction
+     */
+    public TransactionView(UUID id, UUID accountId, String name, LocalDate date, long amount, Transaction.TransType type) {
+        this.id = id;
+        this.accountId = accountId;
+        this.name = name;
+        this.date = date;
+        this.amount = amount;
+        this.type = type;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getAccountId() {
+        return accountId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @JsonSerialize(using = LocalDateSerializer.class)
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Returns the amount in dollars, matching the JSON written for a {@link Transaction}
+     * @return the amount in dollars
+     */
+    public BigDecimal getAmount() {
+        return MoneyHelper.toDecimal(amount);
+    }
+
+    @JsonIgnore
+    public long getAmountCents() {
+        return amount;
+    }
+
+    public Transaction.TransType getType() {
+        return type;
+    }
+}
@@ -0,0 +1,73 @@
+package com.sixtey7.fjservice.model.transport;
+
+import com.sixtey7.fjservice.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class used to capture a batch of transaction writes (and reads) that are applied together
+ */
+public class TxBatch {
+    /**
+     * Transactions to add (without ids)
+     */
+    private List<Transaction> creates;
+
+    /**
+     * Transactions to update (with ids)
+     */
+    private List<Transaction> updates;
+
+    /**
+     * Ids of the transactions to delete
+     */
+    private List<String> deletes;
+
+    /**
+     * Ids of the transactions to return once the batch has been applied
+     */
+    private List<String> fetch;
+
+    /**
+     * Default constructor
+     */
+    public TxBatch() {
+        this.creates = new ArrayList<>();
+        this.updates = new ArrayList<>();
+        this.deletes = new ArrayList<>();
+        this.fetch = new ArrayList<>();
+    }
+
+    public List<Transaction> getCreates() {
+        return creates;
+    }
+
+    public void setCreates(List<Transaction> creates) {
+        this.creates = creates == null ? new ArrayList<>() : creates;
+    }
+
+    public List<Transaction> getUpdates() {
+        return updates;
+    }
+
+    public void setUpdates(List<Transaction> updates) {
+        this.updates = updates == null ? new ArrayList<>() : updates;
+    }
+
+    public List<String> getDeletes() {
+        return deletes;
+    }
+
+    public void setDeletes(List<String> deletes) {
+        this.deletes = deletes == null ? new ArrayList<>() : deletes;
+    }
+
+    public List<String> getFetch() {
+        return fetch;
+    }
+
+    public void setFetch(List<String> fetch) {
+        this.fetch = fetch == null ? new ArrayList<>() : fetch;
+    }
+}
@@ -0,0 +1,78 @@
+package com.sixtey7.fjservice.model.transport;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position within the (date, id) ordering of transactions, handed to clients as an opaque string.
+ * Transactions without a date sort before all of the dated ones
+ */
+public class TxCursor {
+
+    /**
+     * Separator between the date and the id in the encoded form
+     */
+    private static final String SEPARATOR = "|";
+
+    /**
+     * Date of the last transaction that was returned (null if it had no date)
+     */
+    private final LocalDate date;
+
+    /**
+     * Id of the last transaction that was returned
+     */
+    private final UUID id;
+
+    /**
+     * Constructor
+     */
+    public TxCursor(LocalDate date, UUID id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    /**
+     * Encodes the cursor into the opaque form handed to clients
+     * @return {@link String} containing the encoded cursor
+     */
+    public String encode() {
+        // an undated transaction is encoded with nothing before the separator
+        String raw = (date == null ? "" : date.toString()) + SEPARATOR + id.toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor that was provided by a client
+     * @param encoded {@link String} containing the encoded cursor
+     * @return {@link TxCursor} represented by the string
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public static TxCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separatorPos = raw.indexOf(SEPARATOR);
+
+            if (separatorPos < 0) {
+                throw new IllegalArgumentException("Invalid cursor " + encoded);
+            }
+
+            LocalDate date = separatorPos == 0 ? null : LocalDate.parse(raw.substring(0, separatorPos));
+            return new TxCursor(date, UUID.fromString(raw.substring(separatorPos + 1)));
+        }
+        catch (DateTimeParseException dtpe) {
+            throw new IllegalArgumentException("Invalid cursor " + encoded);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.sixtey7.fjservice.model.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class used to capture a single page of transactions
+ */
+public class TxPage {
+    /**
+     * Read-only views of the transactions on this page, ordered by date then id
+     */
+    private List<TransactionView> transactions;
+
+    /**
+     * Cursor to request the next page with (null if this is the last page)
+     */
+    private String next;
+
+    /**
+     * Default constructor
+     */
+    public TxPage() {
+        this.transactions = new ArrayList<>();
+    }
+
+    public List<TransactionView> getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(List<TransactionView> transactions) {
+        this.transactions = transactions;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
@@ -1,12 +1,21 @@
 package com.sixtey7.fjservice.rest;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sixtey7.fjservice.model.Account;
 import com.sixtey7.fjservice.model.converter.CSVGenerator;
 import com.sixtey7.fjservice.model.converter.CSVParser;
 import com.sixtey7.fjservice.model.db.AccountDAO;
+import com.sixtey7.fjservice.model.db.BalanceSnapshotDAO;
+import com.sixtey7.fjservice.model.transport.AccountForecast;
+import com.sixtey7.fjservice.model.transport.AccountView;
+import com.sixtey7.fjservice.model.transport.BalanceRange;
 import com.sixtey7.fjservice.utils.AccountHelper;
+import com.sixtey7.fjservice.utils.ForecastHelper;
+import com.sixtey7.fjservice.utils.ImportJobManager;
+import com.sixtey7.fjservice.utils.ImportProgress;
+import com.sixtey7.fjservice.utils.JsonHelper;
+import com.sixtey7.fjservice.utils.MoneyHelper;
+import com.sixtey7.fjservice.utils.VersionTracker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -14,10 +23,25 @@ import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * Resource Class providing REST Interfaces for Accounts
@@ -41,6 +65,18 @@ public class AccountResource {
     @Inject
     private AccountHelper acctHelper;
 
+    /**
+     * DAO for the daily balance snapshots
+     */
+    @Inject
+    private BalanceSnapshotDAO snapshotDAO;
+
+    /**
+     * Helper class used to project balances forward
+     */
+    @Inject
+    private ForecastHelper forecastHelper;
+
     /**
      * Helper class used to generate csv data
      */
@@ -53,6 +89,24 @@ public class AccountResource {
     @Inject
     private CSVParser csvParser;
 
+    /**
+     * Manager used to run imports in the background
+     */
+    @Inject
+    private ImportJobManager jobManager;
+
+    /**
+     * Shared mapper used to write the responses
+     */
+    @Inject
+    private JsonHelper jsonHelper;
+
+    /**
+     * Version counters used to tag the account list
+     */
+    @Inject
+    private VersionTracker versionTracker;
+
     /**
      * Temporary interface used to verify resource is deployed correctly
      * @return {@link JsonObject} with the status of the resource
@@ -67,28 +121,48 @@ public class AccountResource {
                 .build();
     }
 
+    /**
+     * REST Service to obtain the second-level cache statistics for accounts
+     * @return {@link JsonObject} with the hit / miss counts
+     */
+    @Path("/cacheStats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject cacheStats() {
+        LOGGER.info("Returning account cache statistics");
+
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        dao.getCacheStatistics().forEach(builder::add);
+
+        return builder.build();
+    }
+
     /**
      * REST Service to obtain all accounts in the database
-     * @return {@link Response} object containing all of the accounts
+     * @param includeNotes whether to include the notes of each account (defaults to true)
+     * @param headers {@link HttpHeaders} of the request, used to pick JSON or NDJSON
+     * @param request {@link Request} used to check the ETag provided by the client
+     * @return {@link Response} object containing all of the accounts (304 if the client's copy is current)
      */
     @Path("")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllAccounts() {
+    @Produces({MediaType.APPLICATION_JSON, JsonHelper.APPLICATION_NDJSON})
+    public Response getAllAccounts(@QueryParam("notes") @DefaultValue("true") final boolean includeNotes, @Context HttpHeaders headers,
+                                   @Context Request request) {
+        EntityTag tag = versionTracker.accountsTag((includeNotes ? "" : "-nonotes") + (jsonHelper.wantsNdjson(headers) ? "-ndjson" : ""));
+
+        // answered before the query runs, which is the point of the tag
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+
         LOGGER.info("Returning all accounts");
-        List<Account> allAccounts = dao.getAllAccounts();
+        List<AccountView> allAccounts = dao.getAllAccountViews(includeNotes);
 
         LOGGER.debug("Returning {} accounts", allAccounts.size());
-        try {
-            ObjectMapper om = new ObjectMapper();
-            String returnString = om.writeValueAsString(allAccounts);
-
-            return Response.status(200).entity(returnString).build();
-        }
-        catch (JsonProcessingException jpe) {
-            return Response.status(500).entity(jpe.getMessage()).build();
-        }
 
+        return buildListResponse(allAccounts, headers, tag);
     }
 
     /**
@@ -104,8 +178,7 @@ public class AccountResource {
         try {
             Account account = dao.getAccount(accountId);
 
-            ObjectMapper om = new ObjectMapper();
-            String returnString = om.writeValueAsString(account);
+            String returnString = jsonHelper.getMapper().writeValueAsString(account);
 
             return Response.status(200).entity(returnString).build();
         }
@@ -115,7 +188,8 @@ public class AccountResource {
     }
 
     /**
-     * Recalculates the balance for the indicated account
+     * Recalculates the balance for the indicated account from all of its transactions, used to
+     * repair a balance if the incremental updates have drifted
      * @param accountId {@link String} containing the ID of the account to update
      * @return Value indicating if the update was successful
      */
@@ -131,6 +205,159 @@ public class AccountResource {
         return Response.status(200).build();
     }
 
+    /**
+     * Recalculates the balance for every calculated account in a single statement
+     * @return {@link Response} containing the number of accounts updated
+     */
+    @Path("/updateAllBalances")
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response updateAllBalances() {
+        LOGGER.info("Updating balances for all accounts");
+
+        int updated = acctHelper.updateAllBalances().size();
+
+        LOGGER.debug("Updated the balance for {} accounts", updated);
+
+        return Response.status(200).entity(updated).build();
+    }
+
+    /**
+     * REST Service to obtain the confirmed balance of an account at the end of the provided date
+     * @param accountId {@link String} containing the UUID of the account
+     * @param dateStr {@link String} containing the date to get the balance for
+     * @return {@link Response} containing the account id, date and balance
+     */
+    @Path("/balanceAsOf/{accountId}/{date}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getBalanceAsOf(@PathParam("accountId") final String accountId, @PathParam("date") final String dateStr) {
+        LOGGER.info("Getting the balance for account {} as of {}", accountId, dateStr);
+
+        try {
+            LocalDate date = LocalDate.parse(dateStr);
+            long balance = acctHelper.getBalanceAsOf(accountId, date);
+
+            JsonObject returnObject = Json.createObjectBuilder()
+                    .add("accountId", accountId)
+                    .add("date", date.toString())
+                    .add("balance", MoneyHelper.toDecimal(balance))
+                    .build();
+
+            return Response.status(200).entity(returnObject).build();
+        }
+        catch (IllegalArgumentException | DateTimeParseException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * REST Service to obtain how the confirmed balance of an account moved between two dates
+     * @param accountId {@link String} containing the UUID of the account
+     * @param startDateStr {@link String} containing the first day of the range
+     * @param endDateStr {@link String} containing the last day of the range
+     * @return {@link Response} containing a {@link BalanceRange}
+     */
+    @Path("/balanceBetween/{accountId}/{startDate}/{endDate}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getBalanceBetween(@PathParam("accountId") final String accountId, @PathParam("startDate") final String startDateStr,
+                                      @PathParam("endDate") final String endDateStr) {
+        LOGGER.info("Getting the balances for account {} between {} and {}", accountId, startDateStr, endDateStr);
+
+        try {
+            BalanceRange range = acctHelper.getBalanceRange(accountId, LocalDate.parse(startDateStr), LocalDate.parse(endDateStr));
+
+            String returnString = jsonHelper.getMapper().writeValueAsString(range);
+
+            return Response.status(200).entity(returnString).build();
+        }
+        catch (IllegalArgumentException | DateTimeParseException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        }
+        catch (JsonProcessingException jpe) {
+            return Response.status(500).entity(jpe.getMessage()).build();
+        }
+    }
+
+    /**
+     * REST Service to forecast the balance of every account up to the end date from its outstanding
+     * (PLANNED, ESTIMATE, PENDING and FUTURE) transactions
+     * @param endDateStr {@link String} containing the last day of the forecast
+     * @param threshold balance to report the first drop below (defaults to 0)
+     * @param daily whether to include the projected balance for each day it changes
+     * @param headers {@link HttpHeaders} of the request, used to pick JSON or NDJSON
+     * @return {@link Response} containing a {@link List} of {@link AccountForecast}
+     */
+    @Path("/forecast/{endDate}")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, JsonHelper.APPLICATION_NDJSON})
+    public Response forecastAll(@PathParam("endDate") final String endDateStr, @QueryParam("threshold") @DefaultValue("0") final BigDecimal threshold,
+                                @QueryParam("daily") @DefaultValue("false") final boolean daily, @Context HttpHeaders headers) {
+        LOGGER.info("Forecasting all accounts up to {}", endDateStr);
+
+        try {
+            List<AccountForecast> forecasts = forecastHelper.forecastAll(LocalDate.parse(endDateStr), MoneyHelper.toCents(threshold), daily);
+
+            return buildListResponse(forecasts, headers, null);
+        }
+        catch (IllegalArgumentException | DateTimeParseException | ArithmeticException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * REST Service to forecast the balance of a single account up to the end date from its outstanding
+     * (PLANNED, ESTIMATE, PENDING and FUTURE) transactions
+     * @param accountId {@link String} containing the UUID of the account
+     * @param endDateStr {@link String} containing the last day of the forecast
+     * @param threshold balance to report the first drop below (defaults to 0)
+     * @param daily whether to include the projected balance for each day it changes
+     * @return {@link Response} containing the {@link AccountForecast}
+     */
+    @Path("/forecast/{accountId}/{endDate}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response forecastAccount(@PathParam("accountId") final String accountId, @PathParam("endDate") final String endDateStr,
+                                    @QueryParam("threshold") @DefaultValue("0") final BigDecimal threshold,
+                                    @QueryParam("daily") @DefaultValue("false") final boolean daily) {
+        LOGGER.info("Forecasting account {} up to {}", accountId, endDateStr);
+
+        try {
+            AccountForecast forecast = forecastHelper.forecastAccount(accountId, LocalDate.parse(endDateStr), MoneyHelper.toCents(threshold), daily);
+
+            if (forecast == null) {
+                return Response.status(404).entity("No account found for id " + accountId).build();
+            }
+
+            String returnString = jsonHelper.getMapper().writeValueAsString(forecast);
+
+            return Response.status(200).entity(returnString).build();
+        }
+        catch (IllegalArgumentException | DateTimeParseException | ArithmeticException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        }
+        catch (JsonProcessingException jpe) {
+            return Response.status(500).entity(jpe.getMessage()).build();
+        }
+    }
+
+    /**
+     * Throws away the daily balance snapshots and rebuilds them from the transactions, moving the
+     * snapshot horizon up to today
+     * @return {@link Response} containing the number of snapshots built
+     */
+    @Path("/rebuildSnapshots")
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response rebuildSnapshots() {
+        LOGGER.info("Rebuilding the balance snapshots");
+
+        int built = snapshotDAO.rebuildSnapshots();
+
+        return Response.status(200).entity(built).build();
+    }
+
     /**
      * Creates a CSV File with the data from the accounts
      * @return A {@link Response} containing the text from all {@link Account}
@@ -141,23 +368,34 @@ public class AccountResource {
     public Response generateCSVFile() {
         LOGGER.info("Generating a CSV File for all accounts");
 
-        String returnData = csvGenerator.generateCSVForAllAccounts();
+        StreamingOutput returnData = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            csvGenerator.writeCSVForAllAccounts(writer);
+            writer.flush();
+        };
 
         return Response.status(200).entity(returnData).build();
     }
 
     /**
      * Imports the data from an exported CSV File
-     * @param csvData Text from the CSV File
-     * @return {@link Response} containing a {@link List} of {@link Account} parsed from the CSV File
+     * @param async whether to run the import in the background and return straight away
+     * @param csvData {@link InputStream} containing the CSV File
+     * @return {@link Response} containing a {@link List} of {@link Account} parsed from the CSV File, or
+     * the status of the background import
      */
     @Path("/import")
     @PUT
     @Produces(MediaType.APPLICATION_JSON)
-    @Consumes(MediaType.TEXT_PLAIN)
-    public Response importFromCSV(String csvData) {
+    @Consumes({MediaType.TEXT_PLAIN, MediaType.APPLICATION_OCTET_STREAM})
+    public Response importFromCSV(@QueryParam("async") @DefaultValue("false") final boolean async, InputStream csvData) {
+        if (async) {
+            return ImportJobResource.submit(jobManager, "Import of accounts", csvData,
+                    (jobParser, spooled, progress) -> jobParser.parseAndClearAndStoreAccountFromCSV(spooled, progress));
+        }
+
         try {
-            List<Account> returnData = csvParser.parseAndClearAndStoreAccountFromCSV(csvData);
+            List<Account> returnData = csvParser.parseAndClearAndStoreAccountFromCSV(csvData, ImportProgress.NONE);
 
             return Response.status(200).entity(returnData).build();
         }
@@ -227,6 +465,7 @@ public class AccountResource {
     public Response deleteAccount(@PathParam("accountId") final String accountId) {
         LOGGER.info("Deleting account with id: {}", accountId);
         int response = dao.deleteAccount(accountId);
+        snapshotDAO.deleteSnapshotsForAccount(UUID.fromString(accountId));
 
         LOGGER.debug("Deleted {} accounts", response);
         return Response.status(200).entity(response).build();
@@ -245,4 +484,22 @@ public class AccountResource {
         LOGGER.debug("Deleted {} accounts", response);
         return Response.status(200).entity(response).build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Builds the response that streams the provided items, as a JSON array or as NDJSON depending on
+     * what the client accepts
+     * @param items {@link List} of the items to write
+     * @param headers {@link HttpHeaders} of the request
+     * @param tag {@link EntityTag} for the version of the items (null if they aren't versioned)
+     * @return {@link Response} that writes the items
+     */
+    private Response buildListResponse(List<?> items, HttpHeaders headers, EntityTag tag) {
+        boolean ndjson = jsonHelper.wantsNdjson(headers);
+
+        return Response.status(200)
+                .type(jsonHelper.listType(ndjson))
+                .tag(tag)
+                .entity(jsonHelper.streamList(items, ndjson))
+                .build();
+    }
+}
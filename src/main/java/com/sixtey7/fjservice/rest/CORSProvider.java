@@ -19,7 +19,8 @@ public class CORSProvider implements Feature {
         CorsFilter filter = new CorsFilter();
         filter.getAllowedOrigins().add("*");
         filter.setAllowedMethods("GET, POST, PUT, DELETE, OPTIONS, HEAD");
-        filter.setAllowedHeaders("accept, content-type, origin");
+        filter.setAllowedHeaders("accept, content-type, origin, if-none-match");
+        filter.setExposedHeaders("etag");
         context.register(filter);
         return true;
     }
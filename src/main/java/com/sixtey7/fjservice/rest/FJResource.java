@@ -2,7 +2,11 @@ package com.sixtey7.fjservice.rest;
 
 import com.sixtey7.fjservice.model.converter.CSVGenerator;
 import com.sixtey7.fjservice.model.converter.CSVParser;
+import com.sixtey7.fjservice.model.db.LoadMode;
+import com.sixtey7.fjservice.model.transport.ImportSummary;
 import com.sixtey7.fjservice.model.transport.TxUpdate;
+import com.sixtey7.fjservice.utils.ImportJobManager;
+import com.sixtey7.fjservice.utils.ImportProgress;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -13,6 +17,12 @@ import javax.json.JsonObject;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * RESTful Service used to create and obtain FJ Service information
@@ -35,6 +45,12 @@ public class FJResource {
     @Inject
     private CSVParser csvParser;
 
+    /**
+     * Manager used to run imports in the background
+     */
+    @Inject
+    private ImportJobManager jobManager;
+
     /**
      * Endpoint used to test the status of the service
      * @return {@link String} a message indicating that the call was successful
@@ -61,25 +77,29 @@ public class FJResource {
     public Response generateCSVFile() {
         LOGGER.info("Generating CSV File for all objects in database");
 
-        String returnData = csvGenerator.generateStringForAllData();
+        StreamingOutput returnData = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            csvGenerator.writeCSVForAllData(writer);
+            writer.flush();
+        };
 
         return Response.status(200).entity(returnData).build();
     }
 
     /**
      * REST service used to import the contents of the CSV File
-     * @param csvData {@link String} the text from the CSV File
+     * @param csvData {@link InputStream} containing the CSV File
      * @return {@link String} the imported data
      */
     @Path("/import")
     @PUT
     @Produces(MediaType.APPLICATION_JSON)
-    @Consumes(MediaType.TEXT_PLAIN)
-    public Response importFromCSV(String csvData) {
+    @Consumes({MediaType.TEXT_PLAIN, MediaType.APPLICATION_OCTET_STREAM})
+    public Response importFromCSV(InputStream csvData) {
         LOGGER.info("importing accounts and transactions");
 
         try {
-            TxUpdate returnData = csvParser.parseAllFromCSV(csvData);
+            TxUpdate returnData = csvParser.parseAllFromCSV(csvData, ImportProgress.NONE);
 
             return Response.status(200).entity(returnData).build();
         }
@@ -90,18 +110,29 @@ public class FJResource {
 
     /**
      * Cleans out the database adn then imports the provided data
-     * @param csvData {@link String} the text from the CSV File
-     * @return {@link String} the imported data
+     * @param mode {@link String} load mode to use (jpa or copy, defaults to jpa)
+     * @param async whether to run the import in the background and return straight away
+     * @param csvData {@link InputStream} containing the CSV File, read as it is imported
+     * @return {@link ImportSummary} of the imported data, or the status of the background import
      */
     @Path("/cleanAndImport")
     @PUT
     @Produces(MediaType.APPLICATION_JSON)
-    @Consumes(MediaType.TEXT_PLAIN)
-    public Response cleanAndImportFromCSV(String csvData) {
+    @Consumes({MediaType.TEXT_PLAIN, MediaType.APPLICATION_OCTET_STREAM})
+    public Response cleanAndImportFromCSV(@QueryParam("mode") final String mode,
+                                          @QueryParam("async") @DefaultValue("false") final boolean async,
+                                          InputStream csvData) {
         LOGGER.info("Cleaning the database then importing accounts and transactions");
 
         try {
-            TxUpdate returnData = csvParser.parseAndClearAndStoreAllFromCSV(csvData);
+            LoadMode loadMode = LoadMode.fromParam(mode);
+
+            if (async) {
+                return ImportJobResource.submit(jobManager, "Clean and import of accounts and transactions", csvData,
+                        (jobParser, spooled, progress) -> jobParser.parseAndClearAndStoreAllFromCSV(spooled, loadMode, progress));
+            }
+
+            ImportSummary returnData = csvParser.parseAndClearAndStoreAllFromCSV(csvData, loadMode, ImportProgress.NONE);
 
             return Response.status(200).entity(returnData).build();
         }
@@ -0,0 +1,132 @@
+package com.sixtey7.fjservice.rest;
+
+import com.sixtey7.fjservice.model.transport.ImportJobStatus;
+import com.sixtey7.fjservice.utils.ImportJob;
+import com.sixtey7.fjservice.utils.ImportJobManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Resource Class providing REST Interfaces for imports running in the background
+ */
+@Path("/imports")
+@RequestScoped
+public class ImportJobResource {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(ImportJobResource.class);
+
+    /**
+     * Manager holding the import jobs
+     */
+    @Inject
+    private ImportJobManager jobManager;
+
+    /**
+     * Queues an import to run in the background and builds the response pointing the client at it.  The
+     * data is spooled to a temporary file first, as the request body can't be read once the request is over
+     * @param jobManager {@link ImportJobManager} to submit the job to
+     * @param description {@link String} describing what is being imported
+     * @param data {@link InputStream} containing the data to import
+     * @param work {@link ImportJobManager.Work} that imports the data, with a {@link com.sixtey7.fjservice.model.converter.CSVParser} of its own
+     * @return {@link Response} containing the {@link ImportJobStatus} of the queued job (503 if the queue is full)
+     */
+    static Response submit(ImportJobManager jobManager, String description, InputStream data, ImportJobManager.Work work) {
+        try {
+            ImportJob job = jobManager.submit(description, data, work);
+
+            return Response.status(202)
+                    .header("Location", "/imports/" + job.getId())
+                    .entity(job.toStatus())
+                    .build();
+        }
+        catch (RejectedExecutionException ree) {
+            LOGGER.warn("Import queue is full, turning away: {}", description);
+            return Response.status(503).entity("Too many imports are already queued, try again later").build();
+        }
+        catch (IOException ioe) {
+            LOGGER.error("Failed to spool the data for: {}", description, ioe);
+            return Response.status(500).entity("Failed to read the data to import").build();
+        }
+    }
+
+    /**
+     * REST Service used to list the queued, running and recently finished imports
+     * @return {@link Response} containing a {@link List} of {@link ImportJobStatus}, newest first
+     */
+    @Path("")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getAllJobs() {
+        LOGGER.info("Getting all import jobs");
+
+        List<ImportJobStatus> returnList = jobManager.getJobs().stream()
+                .map(ImportJob::toStatus)
+                .collect(Collectors.toList());
+
+        return Response.status(200).entity(returnList).build();
+    }
+
+    /**
+     * REST Service used to check on an import
+     * @param jobId {@link String} containing the UUID of the job
+     * @return {@link Response} containing the {@link ImportJobStatus} of the job
+     */
+    @Path("/{jobId}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getJob(@PathParam("jobId") final String jobId) {
+        LOGGER.info("Getting import job {}", jobId);
+
+        try {
+            ImportJob job = jobManager.getJob(UUID.fromString(jobId));
+            if (job == null) {
+                return Response.status(404).entity("No import job with id " + jobId).build();
+            }
+
+            return Response.status(200).entity(job.toStatus()).build();
+        }
+        catch (IllegalArgumentException iae) {
+            return Response.status(400).entity(iae.getMessage()).build();
+        }
+    }
+
+    /**
+     * REST Service used to cancel an import.  Staged imports roll back completely, imports that commit
+     * in chunks keep the chunks that were committed before the cancel was seen
+     * @param jobId {@link String} containing the UUID of the job
+     * @return {@link Response} containing the {@link ImportJobStatus} of the job
+     */
+    @Path("/{jobId}")
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response cancelJob(@PathParam("jobId") final String jobId) {
+        LOGGER.info("Cancelling import job {}", jobId);
+
+        try {
+            ImportJob job = jobManager.getJob(UUID.fromString(jobId));
+            if (job == null) {
+                return Response.status(404).entity("No import job with id " + jobId).build();
+            }
+
+            job.cancel();
+
+            return Response.status(200).entity(job.toStatus()).build();
+        }
+        catch (IllegalArgumentException iae) {
+            return Response.status(400).entity(iae.getMessage()).build();
+        }
+    }
+}
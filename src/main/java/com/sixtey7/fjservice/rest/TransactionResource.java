@@ -1,16 +1,28 @@
 package com.sixtey7.fjservice.rest;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sixtey7.fjservice.model.Account;
 import com.sixtey7.fjservice.model.Transaction;
 import com.sixtey7.fjservice.model.converter.CSVGenerator;
 import com.sixtey7.fjservice.model.converter.CSVParser;
-import com.sixtey7.fjservice.model.db.AccountDAO;
+import com.sixtey7.fjservice.model.db.BalanceSnapshotDAO;
+import com.sixtey7.fjservice.model.db.BatchResult;
+import com.sixtey7.fjservice.model.db.LoadMode;
 import com.sixtey7.fjservice.model.db.TransactionDAO;
+import com.sixtey7.fjservice.model.transport.ImportSummary;
+import com.sixtey7.fjservice.model.transport.LedgerPage;
+import com.sixtey7.fjservice.model.transport.TransactionView;
+import com.sixtey7.fjservice.model.transport.TxBatch;
+import com.sixtey7.fjservice.model.transport.TxCursor;
+import com.sixtey7.fjservice.model.transport.TxPage;
 import com.sixtey7.fjservice.model.transport.TxUpdate;
-import com.sixtey7.fjservice.utils.AccountHelper;
+import com.sixtey7.fjservice.utils.AccountTxCache;
+import com.sixtey7.fjservice.utils.BalanceHelper;
+import com.sixtey7.fjservice.utils.ImportJobManager;
+import com.sixtey7.fjservice.utils.ImportProgress;
+import com.sixtey7.fjservice.utils.JsonHelper;
 import com.sixtey7.fjservice.utils.TransHelper;
+import com.sixtey7.fjservice.utils.VersionTracker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -18,14 +30,29 @@ import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.persistence.PersistenceException;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * RESTful Service used to create and obtain data about transactions
@@ -37,6 +64,16 @@ public class TransactionResource {
     //create a logger for the class
     private static final Logger LOGGER = LogManager.getLogger(TransactionResource.class);
 
+    /**
+     * Page size used when a cursor is provided without a limit
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Largest page size a client can request
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
     /**
      * DAO object to be used to access the database
      */
@@ -44,16 +81,22 @@ public class TransactionResource {
     private TransactionDAO  dao;
 
     /**
-     * DAO object for accounts
+     * Helper class used to keep account balances up to date
      */
     @Inject
-    private AccountDAO acctDao;
+    private BalanceHelper balanceHelper;
 
     /**
-     * Helper class used to manage accounts
+     * Cache of the serialized transaction list for each account
      */
     @Inject
-    private AccountHelper acctHelper;
+    private AccountTxCache accountTxCache;
+
+    /**
+     * DAO for the daily balance snapshots, which are rebuilt after bulk changes
+     */
+    @Inject
+    private BalanceSnapshotDAO snapshotDAO;
 
     /**
      * Helper class used to massage transactions
@@ -73,6 +116,24 @@ public class TransactionResource {
     @Inject
     private CSVParser csvParser;
 
+    /**
+     * Manager used to run imports in the background
+     */
+    @Inject
+    private ImportJobManager jobManager;
+
+    /**
+     * Shared mapper used to write the responses
+     */
+    @Inject
+    private JsonHelper jsonHelper;
+
+    /**
+     * Version counters used to tag the lists
+     */
+    @Inject
+    private VersionTracker versionTracker;
+
     /**
      * REST service used to verify the Transaction Service is up and running
      * @return {@link JsonObject} indicating the status of the service
@@ -89,26 +150,58 @@ public class TransactionResource {
     }
 
     /**
-     * REST Service used to obtain all of the transactions in the database
+     * REST Service used to obtain all of the transactions in the database.  Unless a page is requested, the
+     * transactions are streamed straight from the database to the response
+     * @param limit the maximum number of transactions per page (optional, pages are only used if limit or cursor is provided)
+     * @param cursor {@link String} cursor returned as next by the previous page (optional)
+     * @param includeNotes whether to include the notes of each transaction (defaults to true)
+     * @param headers {@link HttpHeaders} of the request, used to pick JSON or NDJSON
+     * @param request {@link Request} used to check the ETag provided by the client
      * @return {@link Response} that contains all of the transactions
      */
     @Path("")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllTransactions() {
+    @Produces({MediaType.APPLICATION_JSON, JsonHelper.APPLICATION_NDJSON})
+    public Response getAllTransactions(@QueryParam("limit") final Integer limit, @QueryParam("cursor") final String cursor,
+                                       @QueryParam("notes") @DefaultValue("true") final boolean includeNotes, @Context HttpHeaders headers,
+                                       @Context Request request) {
+        EntityTag tag = versionTracker.transactionsTag(variant(includeNotes, headers));
+        Response notModified = checkNotModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
+
+        if (isPaged(limit, cursor)) {
+            LOGGER.info("Returning a page of all transactions");
+            return buildPageResponse(() -> dao.getAllTransactionsPage(parseCursor(cursor), pageSize(limit), includeNotes), tag);
+        }
+
         LOGGER.info("Returning all transactions");
-        List<Transaction> allTransactions = dao.getAllTransactions();
 
-        LOGGER.debug("Got {} transactions", allTransactions.size());
-        try {
-            ObjectMapper om = new ObjectMapper();
-            String returnString = om.writeValueAsString(allTransactions);
+        return buildListResponse(consumer -> dao.streamAllTransactionViews(includeNotes, consumer), headers, tag);
+    }
 
-            return Response.status(200).entity(returnString).build();
-        }
-        catch(JsonProcessingException jpe) {
-            return Response.status(500).entity(jpe.getMessage()).build();
-        }
+    /**
+     * REST Service to obtain the statistics for the per-account transaction cache
+     * @return {@link JsonObject} with the hit rate, eviction and size statistics
+     */
+    @Path("/cacheStats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject cacheStats() {
+        LOGGER.info("Returning transaction cache statistics");
+
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        accountTxCache.getStatistics().forEach((name, value) -> {
+            if (value instanceof Double) {
+                builder.add(name, value.doubleValue());
+            }
+            else {
+                builder.add(name, value.longValue());
+            }
+        });
+
+        return builder.build();
     }
 
     /**
@@ -124,8 +217,7 @@ public class TransactionResource {
         try {
             Transaction transaction = dao.getTransaction(transId);
 
-            ObjectMapper om = new ObjectMapper();
-            String returnString = om.writeValueAsString(transaction);
+            String returnString = jsonHelper.getMapper().writeValueAsString(transaction);
 
             return Response.status(200).entity(returnString).build();
         }
@@ -137,80 +229,164 @@ public class TransactionResource {
     /**
      * REST Service used to get all of the transactions tied to the specified account
      * @param accountId {@link String} containing the UUID of the account to get transactions for
+     * @param limit the maximum number of transactions per page (optional, pages are only used if limit or cursor is provided)
+     * @param cursor {@link String} cursor returned as next by the previous page (optional)
+     * @param includeNotes whether to include the notes of each transaction (defaults to true)
+     * @param headers {@link HttpHeaders} of the request, used to pick JSON or NDJSON
+     * @param request {@link Request} used to check the ETag provided by the client
      * @return {@link Response} containing the list of matching transactions
      */
     @Path("/forAccount/{accountId}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getTransForAccount(@PathParam("accountId") final String accountId) {
+    @Produces({MediaType.APPLICATION_JSON, JsonHelper.APPLICATION_NDJSON})
+    public Response getTransForAccount(@PathParam("accountId") final String accountId, @QueryParam("limit") final Integer limit, @QueryParam("cursor") final String cursor,
+                                       @QueryParam("notes") @DefaultValue("true") final boolean includeNotes, @Context HttpHeaders headers,
+                                       @Context Request request) {
+        EntityTag tag;
+        try {
+            tag = versionTracker.accountTransactionsTag(UUID.fromString(accountId), variant(includeNotes, headers));
+        }
+        catch (IllegalArgumentException iae) {
+            return Response.status(400).entity(iae.getMessage()).build();
+        }
+
+        Response notModified = checkNotModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
+
+        if (isPaged(limit, cursor)) {
+            LOGGER.info("Getting a page of transactions for account id {}", accountId);
+            return buildPageResponse(() -> dao.getTxForAccountPage(accountId, parseCursor(cursor), pageSize(limit), includeNotes), tag);
+        }
+
         LOGGER.info("Getting the transaction details for account id {}", accountId);
-        List allTransactions = dao.getTxForAccount(accountId);
 
-        LOGGER.debug("Found {} transactions for account {}", allTransactions.size(), accountId);
+        if (!includeNotes || jsonHelper.wantsNdjson(headers)) {
+            // the cache holds the full JSON array, so anything else is written from the database each time
+            return buildListResponse(dao.getTxViewsForAccount(accountId, includeNotes)::forEach, headers, tag);
+        }
+
         try {
-            ObjectMapper om = new ObjectMapper();
-            String returnString = om.writeValueAsString(allTransactions);
+            byte[] returnData = accountTxCache.get(UUID.fromString(accountId), accountUUID -> {
+                List<TransactionView> allTransactions = dao.getTxViewsForAccount(accountId, true);
+
+                LOGGER.debug("Found {} transactions for account {}", allTransactions.size(), accountId);
+                try {
+                    return jsonHelper.getMapper().writeValueAsBytes(allTransactions);
+                }
+                catch (JsonProcessingException jpe) {
+                    throw new UncheckedIOException(jpe);
+                }
+            });
+
+            return Response.status(200).tag(tag).entity(returnData).build();
+        }
+        catch (UncheckedIOException uioe) {
+            return Response.status(500).entity(uioe.getCause().getMessage()).build();
+        }
+    }
 
-            return Response.status(200).entity(returnString).build();
+    /**
+     * REST Service used to get the ledger for the specified account: its transactions ordered by date,
+     * each with the running confirmed balance and the projected balance including every other type
+     * @param accountId {@link String} containing the UUID of the account to get the ledger for
+     * @param limit the maximum number of entries per page (optional)
+     * @param cursor {@link String} cursor returned as next by the previous page (optional)
+     * @param request {@link Request} used to check the ETag provided by the client
+     * @return {@link Response} containing a {@link LedgerPage}
+     */
+    @Path("/ledger/{accountId}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getLedgerForAccount(@PathParam("accountId") final String accountId, @QueryParam("limit") final Integer limit, @QueryParam("cursor") final String cursor,
+                                        @Context Request request) {
+        LOGGER.info("Getting a page of the ledger for account id {}", accountId);
+
+        EntityTag tag;
+        try {
+            tag = versionTracker.accountTransactionsTag(UUID.fromString(accountId), "");
         }
-        catch (JsonProcessingException jpe) {
-            return Response.status(500).entity(jpe.getMessage()).build();
+        catch (IllegalArgumentException iae) {
+            return Response.status(400).entity(iae.getMessage()).build();
         }
+
+        Response notModified = checkNotModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
+
+        return buildPageResponse(() -> dao.getLedgerPage(accountId, parseCursor(cursor), pageSize(limit)), tag);
     }
 
     /**
      * REST Service used to get all of the transactions between the two provided dates
      * @param startDateStr {@link String} String containing the date to start the query from
      * @param endDateStr {@link String} String containing the date to end the query at
+     * @param limit the maximum number of transactions per page (optional, pages are only used if limit or cursor is provided)
+     * @param cursor {@link String} cursor returned as next by the previous page (optional)
+     * @param includeNotes whether to include the notes of each transaction (defaults to true)
+     * @param headers {@link HttpHeaders} of the request, used to pick JSON or NDJSON
+     * @param request {@link Request} used to check the ETag provided by the client
      * @return {@link Response} containing the list of transactions between the dates
      */
     @Path("betweenDates/{startDate}/{endDate}")
     @GET
-    public Response getTransactionsBetweenDates(@PathParam("startDate") final String startDateStr, @PathParam("endDate") final String endDateStr) {
+    @Produces({MediaType.APPLICATION_JSON, JsonHelper.APPLICATION_NDJSON})
+    public Response getTransactionsBetweenDates(@PathParam("startDate") final String startDateStr, @PathParam("endDate") final String endDateStr,
+                                                @QueryParam("limit") final Integer limit, @QueryParam("cursor") final String cursor,
+                                                @QueryParam("notes") @DefaultValue("true") final boolean includeNotes, @Context HttpHeaders headers,
+                                                @Context Request request) {
         LOGGER.debug("Getting the transactions between {} and {}", startDateStr, endDateStr);
 
+        EntityTag tag = versionTracker.transactionsTag(variant(includeNotes, headers));
+        Response notModified = checkNotModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
+
         LocalDate startDate = LocalDate.parse(startDateStr);
         LocalDate endDate = LocalDate.parse(endDateStr);
 
-        List<Transaction> txsBetweenDates = dao.getTxBetweenDates(startDate, endDate);
-
-        LOGGER.debug("Found {} transactions between the dates", txsBetweenDates.size());
-        try {
-            ObjectMapper om = new ObjectMapper();
-            String returnString = om.writeValueAsString(txsBetweenDates);
-
-            return Response.status(200).entity(returnString).build();
-        }
-        catch (JsonProcessingException jpe) {
-            return Response.status(500).entity(jpe.getMessage()).build();
+        if (isPaged(limit, cursor)) {
+            return buildPageResponse(() -> dao.getTxBetweenDatesPage(startDate, endDate, parseCursor(cursor), pageSize(limit), includeNotes), tag);
         }
+
+        return buildListResponse(consumer -> dao.streamTxViewsBetweenDates(startDate, endDate, includeNotes, consumer), headers, tag);
     }
 
     /**
      * REST Service used to get all of the transactions after the specified date
      * @param dateFilterStr {@link String} String containing the date to start the filter
+     * @param limit the maximum number of transactions per page (optional, pages are only used if limit or cursor is provided)
+     * @param cursor {@link String} cursor returned as next by the previous page (optional)
+     * @param includeNotes whether to include the notes of each transaction (defaults to true)
+     * @param headers {@link HttpHeaders} of the request, used to pick JSON or NDJSON
+     * @param request {@link Request} used to check the ETag provided by the client
      * @return {@link Response} containing the list of transactions after the date
      */
     @Path("newerThan/{dateFilter}")
     @GET
-    public Response getTransactionsNewerThan(@PathParam("dateFilter") final String dateFilterStr) {
+    @Produces({MediaType.APPLICATION_JSON, JsonHelper.APPLICATION_NDJSON})
+    public Response getTransactionsNewerThan(@PathParam("dateFilter") final String dateFilterStr,
+                                             @QueryParam("limit") final Integer limit, @QueryParam("cursor") final String cursor,
+                                             @QueryParam("notes") @DefaultValue("true") final boolean includeNotes, @Context HttpHeaders headers,
+                                             @Context Request request) {
         LOGGER.debug("Getting transactions newer than {}", dateFilterStr);
 
-        LocalDate dateFilter = LocalDate.parse(dateFilterStr);
-
-        List<Transaction> txNewerThan = dao.getTxNewerThan(dateFilter);
-
-        LOGGER.debug("Found {} transactions newer than {}", txNewerThan.size(), dateFilterStr);
+        EntityTag tag = versionTracker.transactionsTag(variant(includeNotes, headers));
+        Response notModified = checkNotModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
 
-        try {
-            ObjectMapper om = new ObjectMapper();
-            String returnString = om.writeValueAsString(txNewerThan);
+        LocalDate dateFilter = LocalDate.parse(dateFilterStr);
 
-            return Response.status(200).entity(returnString).build();
-        }
-        catch (JsonProcessingException jpe) {
-            return Response.status(500).entity(jpe.getMessage()).build();
+        if (isPaged(limit, cursor)) {
+            return buildPageResponse(() -> dao.getTxNewerThanPage(dateFilter, parseCursor(cursor), pageSize(limit), includeNotes), tag);
         }
+
+        return buildListResponse(consumer -> dao.streamTxViewsNewerThan(dateFilter, includeNotes, consumer), headers, tag);
     }
 
     /**
@@ -232,12 +408,8 @@ public class TransactionResource {
         //going to get an iso date from the frontend - fix it
         transHelper.fixDateForTrans(transaction);
 
-        String newId = dao.addTransaction(transaction);
-        LOGGER.debug("Assigned ID {}", newId);
-
-        transaction.setId(UUID.fromString(newId));
-
-        Account updatedAccount = acctHelper.updateBalanceForAccount(transaction.getAccountId());
+        Account updatedAccount = balanceHelper.addTransaction(transaction);
+        LOGGER.debug("Assigned ID {}", transaction.getId());
 
         TxUpdate returnObject = new TxUpdate();
         returnObject.getAccounts().add(updatedAccount);
@@ -264,13 +436,19 @@ public class TransactionResource {
 
         Map<String, UUID> accountUUIDMap = new HashMap<>();
         accountUUIDMap.put(accountId, accountUUID);
-        List<Transaction> transToImport = new CSVParser().parseTransactions(transactionData, accountUUIDMap);
+        List<Transaction> transToImport = csvParser.parseTransactions(transactionData, accountUUIDMap);
 
         LOGGER.debug("Found {} transactions", transToImport.size());
 
-        dao.addAllTransactions(transToImport);
+        BatchResult result = dao.addAllTransactions(transToImport);
+        snapshotDAO.rebuildSnapshots();
 
-        return Response.status(200).entity(transToImport.size()).build();
+        if (!result.isSuccess()) {
+            LOGGER.error("Failed to import {} transactions", result.getFailures().size());
+            return Response.status(500).entity(result.getFailures().toString()).build();
+        }
+
+        return Response.status(200).entity(result.getPersistedIds().size()).build();
     }
 
     /**
@@ -283,28 +461,41 @@ public class TransactionResource {
     public Response generateCSVFile() {
         LOGGER.info("Generating a CSV File for all transactions");
 
-        String returnData = csvGenerator.generateCSVForAllTxs();
+        StreamingOutput returnData = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            csvGenerator.writeCSVForAllTxs(writer);
+            writer.flush();
+        };
 
         return Response.status(200).entity(returnData).build();
     }
 
     /**
      * Imports the data from an exported CSV File
-     * @param csvData Text from the CSV File
-     * @return {@link Response} containing a {@link List} of {@link Transaction} parsed from the CSV File
+     * @param mode {@link String} load mode to use (jpa or copy, defaults to jpa)
+     * @param async whether to run the import in the background and return straight away
+     * @param csvData {@link InputStream} containing the CSV File, read as it is imported
+     * @return {@link Response} containing an {@link ImportSummary} of the imported transactions, or
+     * the status of the background import
      */
     @Path("/import")
     @PUT
     @Produces(MediaType.APPLICATION_JSON)
-    @Consumes(MediaType.TEXT_PLAIN)
-    public Response importFromCSV(String csvData) {
+    @Consumes({MediaType.TEXT_PLAIN, MediaType.APPLICATION_OCTET_STREAM})
+    public Response importFromCSV(@QueryParam("mode") final String mode,
+                                  @QueryParam("async") @DefaultValue("false") final boolean async,
+                                  InputStream csvData) {
         LOGGER.info("importing accounts and transactions");
 
-        List<Account> allAccounts = acctDao.getAllAccounts();
-        Map<String, UUID> acctMap = acctHelper.buildNameToUUIDMap(allAccounts);
-
         try {
-            List<Transaction> returnData = csvParser.parseAndClearAndStoreTxFromCSV(csvData, acctMap);
+            LoadMode loadMode = LoadMode.fromParam(mode);
+
+            if (async) {
+                return ImportJobResource.submit(jobManager, "Import of transactions", csvData,
+                        (jobParser, spooled, progress) -> jobParser.parseAndClearAndStoreTxFromCSV(spooled, loadMode, progress));
+            }
+
+            ImportSummary returnData = csvParser.parseAndClearAndStoreTxFromCSV(csvData, loadMode, ImportProgress.NONE);
 
             return Response.status(200).entity(returnData).build();
         }
@@ -335,26 +526,59 @@ public class TransactionResource {
         //going to get an ISO date from the frontend, let's fix that
         transHelper.fixDateForTrans(transaction);
 
-        boolean result = dao.updateTransaction(transaction);
-
-        //TODO: This really needs to be smarter, needs to look at old vs new
-        // and only update if needed (if the state was or is now confirmed
-        // and handle the case where an tx was moved between accounts
-        Account updatedAccount = acctHelper.updateBalanceForAccount(transaction.getAccountId());
+        try {
+            List<Account> updatedAccounts = balanceHelper.updateTransaction(transaction);
 
-        if (result) {
             TxUpdate returnObject = new TxUpdate();
-            returnObject.getAccounts().add(updatedAccount);
+            returnObject.getAccounts().addAll(updatedAccounts);
             returnObject.getTransactions().add(transaction);
-            returnObject.setSuccess(result);
+            returnObject.setSuccess(true);
             return Response.status(200).entity(returnObject).build();
         }
-        else {
-            LOGGER.error("Failed to save the transaction update for transaction id {}", transactionId);
+        catch (PersistenceException pe) {
+            LOGGER.error("Failed to save the transaction update for transaction id {}", transactionId, pe);
             return Response.status(500).entity("Failed to save transaction update!").build();
         }
     }
 
+    /**
+     * REST Service used to apply a batch of creates, updates and deletes in one go, such as when reconciling
+     * a statement.  The batch is applied in a single database transaction and the balance of each affected
+     * account is updated once at the end.  Transactions listed in fetch are returned after the batch is applied
+     * @param batch The details of the batch to be deserialized into a {@link TxBatch}
+     * @return {@link Response} containing a {@link TxUpdate} with the written and fetched transactions and the
+     * updated accounts
+     */
+    @Path("/batch")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response applyBatch(TxBatch batch) {
+        if (batch == null) {
+            return Response.status(400).entity("A batch is required!").build();
+        }
+
+        LOGGER.info("Applying a batch of {} creates, {} updates, {} deletes and {} fetches", batch.getCreates().size(),
+                batch.getUpdates().size(), batch.getDeletes().size(), batch.getFetch().size());
+
+        //going to get ISO dates from the frontend, let's fix them
+        batch.getCreates().forEach(transHelper::fixDateForTrans);
+        batch.getUpdates().forEach(transHelper::fixDateForTrans);
+
+        try {
+            TxUpdate returnObject = balanceHelper.applyBatch(batch);
+
+            return Response.status(200).entity(returnObject).build();
+        }
+        catch (IllegalArgumentException iae) {
+            return Response.status(400).entity(iae.getMessage()).build();
+        }
+        catch (PersistenceException pe) {
+            LOGGER.error("Failed to apply the batch", pe);
+            return Response.status(500).entity("Failed to apply the batch!").build();
+        }
+    }
+
     /**
      * REST Service used to delete a transaction from the database
      * @param transactionId {@link String} containing the UUID of the transaction to be deleted
@@ -365,7 +589,7 @@ public class TransactionResource {
     @Produces(MediaType.TEXT_PLAIN)
     public Response deleteTransaction(@PathParam("transactionId") final String transactionId) {
         LOGGER.info("Deleting transaction with id: {}", transactionId);
-        int response = dao.deleteTransaction(transactionId);
+        int response = balanceHelper.deleteTransaction(transactionId);
 
         LOGGER.debug("Deleting {} transactions", response);
         return Response.status(200).entity(response).build();
@@ -381,9 +605,113 @@ public class TransactionResource {
     public Response deleteAllTransactions() {
         LOGGER.info("Deleting all transactions!");
         int response = dao.deleteAllTransactions();
+        snapshotDAO.rebuildSnapshots();
 
         LOGGER.debug("Deleting {} transactions", response);
 
         return Response.status(200).entity(response).build();
     }
+
+    /**
+     * Answers with a 304 if the client already holds the version described by the tag, before any
+     * query runs
+     * @param request {@link Request} holding the client's If-None-Match header
+     * @param tag {@link EntityTag} for the current version
+     * @return {@link Response} with a 304 status, or null if the data needs to be sent
+     */
+    private Response checkNotModified(Request request, EntityTag tag) {
+        Response.ResponseBuilder builder = request.evaluatePreconditions(tag);
+
+        return builder == null ? null : builder.build();
+    }
+
+    /**
+     * Names the representation of a list, so that each one gets its own tag
+     * @param includeNotes whether the notes are included
+     * @param headers {@link HttpHeaders} of the request, used to tell JSON from NDJSON
+     * @return {@link String} to add to the tag (empty for the full JSON list)
+     */
+    private String variant(boolean includeNotes, HttpHeaders headers) {
+        return (includeNotes ? "" : "-nonotes") + (jsonHelper.wantsNdjson(headers) ? "-ndjson" : "");
+    }
+
+    /**
+     * Returns whether or not the client asked for a paged response
+     * @param limit the requested page size (may be null)
+     * @param cursor {@link String} the requested cursor (may be null)
+     * @return true if either of the paging parameters were provided
+     */
+    private boolean isPaged(Integer limit, String cursor) {
+        return limit != null || cursor != null;
+    }
+
+    /**
+     * Works out the page size to use for the provided limit
+     * @param limit the requested page size (may be null)
+     * @return the page size to use
+     */
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        return limit;
+    }
+
+    /**
+     * Parses the cursor provided by the client
+     * @param cursor {@link String} the requested cursor (may be null)
+     * @return {@link TxCursor} to start after (null for the first page)
+     */
+    private TxCursor parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+
+        return TxCursor.decode(cursor);
+    }
+
+    /**
+     * Builds the response that streams the transactions handed out by the source, as a JSON array or as
+     * NDJSON depending on what the client accepts
+     * @param source {@link Consumer} that hands each {@link TransactionView} to the provided writer
+     * @param headers {@link HttpHeaders} of the request
+     * @param tag {@link EntityTag} for the version of the transactions being written
+     * @return {@link Response} that writes the transactions as they are read
+     */
+    private Response buildListResponse(Consumer<Consumer<TransactionView>> source, HttpHeaders headers, EntityTag tag) {
+        boolean ndjson = jsonHelper.wantsNdjson(headers);
+
+        return Response.status(200)
+                .type(jsonHelper.listType(ndjson))
+                .tag(tag)
+                .entity(jsonHelper.streamList(source, ndjson))
+                .build();
+    }
+
+    /**
+     * Runs the provided page query and serializes the result
+     * @param pageQuery {@link Supplier} that runs the query for the page
+     * @param tag {@link EntityTag} for the version of the transactions on the page
+     * @return {@link Response} containing the page ({@link TxPage} or {@link LedgerPage})
+     */
+    private Response buildPageResponse(Supplier<?> pageQuery, EntityTag tag) {
+        try {
+            Object page = pageQuery.get();
+
+            String returnString = jsonHelper.getMapper().writeValueAsString(page);
+
+            return Response.status(200).tag(tag).entity(returnString).build();
+        }
+        catch (IllegalArgumentException iae) {
+            return Response.status(400).entity(iae.getMessage()).build();
+        }
+        catch (JsonProcessingException jpe) {
+            return Response.status(500).entity(jpe.getMessage()).build();
+        }
+    }
 }
@@ -3,7 +3,10 @@ package com.sixtey7.fjservice.utils;
 import com.sixtey7.fjservice.model.Account;
 import com.sixtey7.fjservice.model.Transaction;
 import com.sixtey7.fjservice.model.db.AccountDAO;
+import com.sixtey7.fjservice.model.db.BalanceSnapshotDAO;
 import com.sixtey7.fjservice.model.db.TransactionDAO;
+import com.sixtey7.fjservice.model.transport.BalancePoint;
+import com.sixtey7.fjservice.model.transport.BalanceRange;
 import com.sixtey7.fjservice.rest.AccountResource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -36,6 +39,12 @@ public class AccountHelper {
     @Inject
     AccountDAO accountDAO;
 
+    /**
+     * DAO for the daily balance snapshots
+     */
+    @Inject
+    BalanceSnapshotDAO snapshotDAO;
+
     /**
      * Kicks off the calculation of the balance for the specified account
      * @param accountUUID a {@link UUID} capturing the id of the account to update
@@ -76,65 +85,78 @@ public class AccountHelper {
     }
 
     /**
-     * Kicks off the calculation of the balance for the provided account
+     * Kicks off the calculation of the balance for the provided account, summing the
+     * CONFIRMED transactions in the database rather than loading them
      * @param accountToUpdate {@link Account} to be updated
      * @return {@link Account} that has had its balance updated
      */
     public Account updateBalanceForAccount(Account accountToUpdate) {
         if (!accountToUpdate.getDynamic()) {
-            List<Transaction> txList = transDAO.getTxForAccount(accountToUpdate.getId().toString());
+            long balance = transDAO.sumConfirmedForAccount(accountToUpdate.getId());
 
-            LOGGER.info("Got {} transactions for account {}", txList.size(), accountToUpdate.getId().toString());
-            return updateBalanceForAccount(accountToUpdate, txList);
+            LOGGER.info("Final Balance: {}", MoneyHelper.format(balance));
+            accountToUpdate.setAmountCents(balance);
         }
 
         return accountToUpdate;
     }
 
     /**
-     * Method that does the actual calculation of the accounts balance
-     * @param accountToUpdate {@link Account} to have its balance updated
-     * @param txList {@link List} of {@link Transaction} pertaining to the account
-     * @return {@link Account} that has the balance updated
+     * Recalculates the balance of every non-dynamic account in the database in a single statement
+     * @return {@link Map} of account {@link UUID} to its new balance in cents
      */
-    private Account updateBalanceForAccount(Account accountToUpdate, List<Transaction> txList) {
-
-        //first, sort the list of transactions
-        Collections.sort(txList);
-
-        float balance = 0;
-        for (Transaction thisTrans : txList) {
-            if (thisTrans.getType().equals(Transaction.TransType.CONFIRMED)) {
-                LOGGER.debug("Balance before {}", balance);
-                LOGGER.debug("Amount {}", thisTrans.getAmount());
-                balance += thisTrans.getAmount();
-                LOGGER.debug("Balance after {}", balance);
-            }
-            //NOTE: This used to break once it hit one that wasn't CONFIRMED, but its possible to have several
-            // entries on the same day, so we can't rely on the first bad one to be the last entry
-            //TODO: Fix the above
-        }
+    public Map<UUID, Long> updateAllBalances() {
+        LOGGER.info("Updating the balance for all accounts");
 
-        LOGGER.info("Final Balance: {}", balance);
-        accountToUpdate.setAmount(balance);
+        return accountDAO.recalculateAllBalances();
+    }
 
-        return accountToUpdate;
+    /**
+     * Returns the confirmed balance of the account at the end of the provided date
+     * @param accountId a {@link String} capturing the UUID of the account
+     * @param date {@link LocalDate} to get the balance for
+     * @return the balance in cents
+     */
+    public long getBalanceAsOf(String accountId, LocalDate date) {
+        LOGGER.debug("Getting the balance for account {} as of {}", accountId, date);
 
+        snapshotDAO.rollForwardIfStale();
+        return snapshotDAO.getBalanceAsOf(UUID.fromString(accountId), date);
     }
 
     /**
-     * Builds a map of Account Ids (in String form) to Account Name
-     * @param accountsToMap {@link List} of {@link Account} objects to build the map from
-     * @return {@link Map} of {@link String} to {@link String} for account id to name
+     * Returns how the confirmed balance of the account moved between the two dates
+     * @param accountId a {@link String} capturing the UUID of the account
+     * @param startDate {@link LocalDate} of the first day of the range
+     * @param endDate {@link LocalDate} of the last day of the range
+     * @return {@link BalanceRange} with the opening and closing balances and each daily change in between
      */
-    public Map<String, String> buildIdNameMap(List<Account> accountsToMap) {
-        Map<String, String> returnMap = new HashMap<>();
+    public BalanceRange getBalanceRange(String accountId, LocalDate startDate, LocalDate endDate) {
+        LOGGER.debug("Getting the balances for account {} between {} and {}", accountId, startDate, endDate);
 
-        for (Account acct : accountsToMap) {
-            returnMap.put(acct.getId().toString(), acct.getName());
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date " + endDate + " is before start date " + startDate);
         }
 
-        return returnMap;
+        UUID accountUUID = UUID.fromString(accountId);
+        snapshotDAO.rollForwardIfStale();
+
+        long openingBalance = snapshotDAO.getBalanceAsOf(accountUUID, startDate.minusDays(1));
+        long closingBalance = openingBalance;
+
+        BalanceRange returnRange = new BalanceRange();
+        for (Map.Entry<LocalDate, Long> daily : snapshotDAO.getDailyBalances(accountUUID, startDate, endDate).entrySet()) {
+            returnRange.getBalances().add(new BalancePoint(daily.getKey(), daily.getValue()));
+            closingBalance = daily.getValue();
+        }
+
+        returnRange.setAccountId(accountUUID);
+        returnRange.setStartDate(startDate);
+        returnRange.setEndDate(endDate);
+        returnRange.setOpeningBalance(MoneyHelper.toDecimal(openingBalance));
+        returnRange.setClosingBalance(MoneyHelper.toDecimal(closingBalance));
+
+        return returnRange;
     }
 
     /**
@@ -0,0 +1,141 @@
+package com.sixtey7.fjservice.utils;
+
+import com.sixtey7.fjservice.model.Account;
+import com.sixtey7.fjservice.model.db.AccountDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Application wide index of account ids to names (and back), shared by the importers and exporters.
+ * Built lazily from the database and thrown away whenever an account is written
+ */
+@ApplicationScoped
+public class AccountIndex {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(AccountIndex.class);
+
+    /**
+     * DAO used to load the accounts
+     */
+    @Inject
+    AccountDAO accountDAO;
+
+    /**
+     * Used to invalidate the index again once the writing transaction completes
+     */
+    @Inject
+    TxSyncHelper txSyncHelper;
+
+    /**
+     * Current version of the index along with its contents.  Both are swapped together, so an index built
+     * while an account was being written can't replace the state an invalidation left behind
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(new State(0, null));
+
+    /**
+     * Returns the name of the indicated account
+     * @param accountId {@link UUID} of the account
+     * @return {@link String} name of the account (null if not found)
+     */
+    public String getName(UUID accountId) {
+        return current().idToName.get(accountId);
+    }
+
+    /**
+     * Returns the current map of account names to ids
+     * @return read-only {@link Map} of {@link String} to {@link UUID} for account name to id
+     */
+    public Map<String, UUID> getNameToIdMap() {
+        return current().nameToId;
+    }
+
+    /**
+     * Throws away the index so that it is rebuilt on next use
+     */
+    public void invalidate() {
+        txSyncHelper.runNowAndAfterCompletion(() -> state.updateAndGet(current -> new State(current.version + 1, null)));
+    }
+
+    /**
+     * Returns the current contents of the index, building it if needed
+     * @return {@link Snapshot} of the index
+     */
+    private Snapshot current() {
+        Snapshot current = state.get().snapshot;
+
+        if (current == null) {
+            synchronized (this) {
+                State buildState = state.get();
+                current = buildState.snapshot;
+                if (current == null) {
+                    current = new Snapshot(accountDAO.getAllAccounts());
+
+                    // only kept if the index hasn't been invalidated since the build started
+                    state.compareAndSet(buildState, new State(buildState.version, current));
+
+                    LOGGER.debug("Built account index version {} with {} accounts", buildState.version, current.idToName.size());
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Version of the index along with its contents
+     */
+    private static class State {
+        /**
+         * Bumped every time the index is invalidated
+         */
+        private final long version;
+
+        /**
+         * Contents of the index (null when it needs to be rebuilt)
+         */
+        private final Snapshot snapshot;
+
+        State(long version, Snapshot snapshot) {
+            this.version = version;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Immutable copy of the index at a point in time
+     */
+    private static class Snapshot {
+        /**
+         * Account ids to names
+         */
+        private final Map<UUID, String> idToName;
+
+        /**
+         * Account names to ids
+         */
+        private final Map<String, UUID> nameToId;
+
+        Snapshot(List<Account> accounts) {
+            Map<UUID, String> idMap = new HashMap<>();
+            Map<String, UUID> nameMap = new HashMap<>();
+
+            for (Account acct : accounts) {
+                idMap.put(acct.getId(), acct.getName());
+                nameMap.put(acct.getName(), acct.getId());
+            }
+
+            this.idToName = Collections.unmodifiableMap(idMap);
+            this.nameToId = Collections.unmodifiableMap(nameMap);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.sixtey7.fjservice.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of the serialized transaction list for each account, bounded by the
+ * total size in bytes of the cached responses
+ */
+@ApplicationScoped
+public class AccountTxCache {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(AccountTxCache.class);
+
+    /**
+     * Used to invalidate entries again once the writing transaction completes
+     */
+    @Inject
+    TxSyncHelper txSyncHelper;
+
+    /**
+     * Maximum total size in bytes of the cached responses
+     */
+    @ConfigProperty(name = "fjservice.cache.account-tx.max-bytes", defaultValue = "33554432")
+    long maxBytes;
+
+    /**
+     * The cache itself, account id to serialized transaction list
+     */
+    private Cache<UUID, byte[]> cache;
+
+    /**
+     * Builds the cache once the configuration has been injected
+     */
+    @PostConstruct
+    void init() {
+        LOGGER.info("Caching account transaction lists up to {} bytes", maxBytes);
+
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((UUID accountId, byte[] txList) -> txList.length)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the serialized transaction list for the indicated account, loading it if needed
+     * @param accountId {@link UUID} of the account
+     * @param loader {@link Function} used to build the serialized list on a miss
+     * @return the serialized transaction list
+     */
+    public byte[] get(UUID accountId, Function<UUID, byte[]> loader) {
+        return cache.get(accountId, loader);
+    }
+
+    /**
+     * Throws away the cached list for the indicated account
+     * @param accountId {@link UUID} of the account (ignored if null)
+     */
+    public void invalidate(UUID accountId) {
+        if (accountId != null) {
+            txSyncHelper.runNowAndAfterCompletion(() -> cache.invalidate(accountId));
+        }
+    }
+
+    /**
+     * Throws away the cached lists for the indicated accounts
+     * @param accountIds {@link Collection} of account {@link UUID}
+     */
+    public void invalidate(Collection<UUID> accountIds) {
+        txSyncHelper.runNowAndAfterCompletion(() -> cache.invalidateAll(accountIds));
+    }
+
+    /**
+     * Throws away all of the cached lists
+     */
+    public void invalidateAll() {
+        txSyncHelper.runNowAndAfterCompletion(() -> cache.invalidateAll());
+    }
+
+    /**
+     * Returns the hit rate, eviction and size statistics for the cache
+     * @return {@link Map} of statistic name to value
+     */
+    public Map<String, Number> getStatistics() {
+        CacheStats stats = cache.stats();
+        Map<String, Number> returnMap = new LinkedHashMap<>();
+
+        returnMap.put("hitRate", stats.hitRate());
+        returnMap.put("hits", stats.hitCount());
+        returnMap.put("misses", stats.missCount());
+        returnMap.put("evictions", stats.evictionCount());
+        returnMap.put("evictedBytes", stats.evictionWeight());
+        returnMap.put("entries", cache.estimatedSize());
+        returnMap.put("bytes", cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+        returnMap.put("maxBytes", maxBytes);
+
+        return returnMap;
+    }
+}
@@ -0,0 +1,347 @@
+package com.sixtey7.fjservice.utils;
+
+import com.sixtey7.fjservice.model.Account;
+import com.sixtey7.fjservice.model.Transaction;
+import com.sixtey7.fjservice.model.db.AccountDAO;
+import com.sixtey7.fjservice.model.db.BalanceSnapshotDAO;
+import com.sixtey7.fjservice.model.db.TransactionDAO;
+import com.sixtey7.fjservice.model.transport.TxBatch;
+import com.sixtey7.fjservice.model.transport.TxUpdate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.persistence.PersistenceException;
+import javax.transaction.Transactional;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Helper class that keeps account balances and their daily snapshots up to date as transactions are
+ * written, by applying the change in each transaction's confirmed amount rather than recalculating the whole account
+ */
+@Dependent
+public class BalanceHelper {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(BalanceHelper.class);
+
+    /**
+     * DAO used for handling {@link Transaction} objects
+     */
+    @Inject
+    TransactionDAO transDAO;
+
+    /**
+     * DAO for {@link Account} objects
+     */
+    @Inject
+    AccountDAO accountDAO;
+
+    /**
+     * DAO for the daily balance snapshots, which are kept up to date in the same way
+     */
+    @Inject
+    BalanceSnapshotDAO snapshotDAO;
+
+    /**
+     * Adds the provided transaction and updates the balance of its account in the same database transaction
+     * @param txToAdd {@link Transaction} to be persisted
+     * @return {@link Account} the transaction belongs to, after its balance has been updated
+     */
+    @Transactional
+    public Account addTransaction(Transaction txToAdd) {
+        transDAO.addTransaction(txToAdd);
+
+        Account updatedAccount = accountDAO.applyBalanceDelta(txToAdd.getAccountId(), confirmedAmount(txToAdd));
+        snapshotDAO.applyDelta(txToAdd.getAccountId(), txToAdd.getDate(), confirmedAmount(txToAdd));
+
+        return updatedAccount;
+    }
+
+    /**
+     * Updates the provided transaction and the balances of the accounts it affects in the same database
+     * transaction.  The update is compared with the stored version first: if nothing changed nothing is
+     * written, and balances and snapshots are only touched where the CONFIRMED total actually moves, so
+     * renaming a transaction or changing a non-confirmed one doesn't lock the account.  A transaction
+     * moved between accounts returns both of them
+     * @param txToUpdate {@link Transaction} to be updated
+     * @return {@link List} of the {@link Account} the transaction belonged to before and after the update
+     */
+    @Transactional
+    public List<Account> updateTransaction(Transaction txToUpdate) {
+        Transaction previous = transDAO.getTransaction(txToUpdate.getId().toString());
+        BalanceDeltas deltas = new BalanceDeltas();
+
+        if (previous != null && isUnchanged(previous, txToUpdate)) {
+            LOGGER.debug("Transaction {} is unchanged, skipping the update", txToUpdate.getId());
+
+            deltas.add(previous.getAccountId(), previous.getDate(), 0);
+            return applyDeltas(deltas);
+        }
+
+        // take the old amount out now, as the merge will overwrite the managed instance
+        if (previous != null) {
+            if (!previous.getAccountId().equals(txToUpdate.getAccountId())) {
+                LOGGER.debug("Transaction {} moved from account {} to {}", txToUpdate.getId(), previous.getAccountId(), txToUpdate.getAccountId());
+            }
+            deltas.add(previous.getAccountId(), previous.getDate(), -confirmedAmount(previous));
+        }
+
+        if (!transDAO.updateTransaction(txToUpdate)) {
+            throw new PersistenceException("Failed to save the update for transaction " + txToUpdate.getId());
+        }
+
+        deltas.add(txToUpdate.getAccountId(), txToUpdate.getDate(), confirmedAmount(txToUpdate));
+
+        return applyDeltas(deltas);
+    }
+
+    /**
+     * Deletes the indicated transaction and updates the balance of its account in the same database transaction
+     * @param idToDelete String containing the id of the {@link Transaction} to be deleted
+     * @return integer capturing the number of records deleted (nominally one)
+     */
+    @Transactional
+    public int deleteTransaction(String idToDelete) {
+        Transaction previous = transDAO.getTransaction(idToDelete);
+
+        if (previous == null) {
+            return 0;
+        }
+
+        UUID accountId = previous.getAccountId();
+        LocalDate date = previous.getDate();
+        long amount = confirmedAmount(previous);
+
+        int deleted = transDAO.deleteTransaction(idToDelete);
+        accountDAO.applyBalanceDelta(accountId, -amount);
+        snapshotDAO.applyDelta(accountId, date, -amount);
+
+        return deleted;
+    }
+
+    /**
+     * Applies a batch of creates, updates and deletes in a single database transaction, then updates the
+     * balance of each account the batch touched once, with the net change of all of its writes, rather
+     * than once per write.  If any write fails the whole batch is rolled back
+     * @param batch {@link TxBatch} to apply
+     * @return {@link TxUpdate} holding the created and updated transactions followed by the fetched ones,
+     * and every account the batch touched
+     * @throws IllegalArgumentException if the batch isn't valid, in which case nothing is written
+     */
+    @Transactional
+    public TxUpdate applyBatch(TxBatch batch) {
+        List<UUID> deleteIds = parseIds(batch.getDeletes());
+        List<UUID> fetchIds = parseIds(batch.getFetch());
+        validate(batch);
+
+        LOGGER.debug("Applying a batch of {} creates, {} updates and {} deletes", batch.getCreates().size(),
+                batch.getUpdates().size(), deleteIds.size());
+
+        BalanceDeltas deltas = new BalanceDeltas();
+        TxUpdate returnObject = new TxUpdate();
+
+        for (Transaction txToAdd : batch.getCreates()) {
+            transDAO.addTransaction(txToAdd);
+            deltas.add(txToAdd.getAccountId(), txToAdd.getDate(), confirmedAmount(txToAdd));
+            returnObject.getTransactions().add(txToAdd);
+        }
+
+        for (Transaction txToUpdate : batch.getUpdates()) {
+            Transaction previous = transDAO.getTransaction(txToUpdate.getId().toString());
+            if (previous == null) {
+                throw new IllegalArgumentException("Transaction " + txToUpdate.getId() + " does not exist");
+            }
+
+            if (isUnchanged(previous, txToUpdate)) {
+                deltas.add(previous.getAccountId(), previous.getDate(), 0);
+                returnObject.getTransactions().add(txToUpdate);
+                continue;
+            }
+
+            // take the old amount out before the merge overwrites the managed instance
+            deltas.add(previous.getAccountId(), previous.getDate(), -confirmedAmount(previous));
+
+            if (!transDAO.updateTransaction(txToUpdate)) {
+                throw new PersistenceException("Failed to save the update for transaction " + txToUpdate.getId());
+            }
+            deltas.add(txToUpdate.getAccountId(), txToUpdate.getDate(), confirmedAmount(txToUpdate));
+            returnObject.getTransactions().add(txToUpdate);
+        }
+
+        for (UUID idToDelete : deleteIds) {
+            Transaction previous = transDAO.getTransaction(idToDelete.toString());
+            if (previous != null) {
+                deltas.add(previous.getAccountId(), previous.getDate(), -confirmedAmount(previous));
+                transDAO.deleteTransaction(idToDelete.toString());
+            }
+        }
+
+        returnObject.getAccounts().addAll(applyDeltas(deltas));
+
+        returnObject.getTransactions().addAll(transDAO.getTransactions(fetchIds));
+        returnObject.setSuccess(true);
+
+        LOGGER.debug("Applied the batch, updating {} accounts", returnObject.getAccounts().size());
+        return returnObject;
+    }
+
+    /**
+     * Applies the net changes to the balances and snapshots.  Accounts whose balance and snapshots are
+     * both unchanged are read rather than locked, and days whose net change is 0 are skipped.  An account
+     * with any snapshot change is locked even if its balance nets to 0, as the lock is what stops a
+     * concurrent writer from copying a snapshot row that the update below can't see yet
+     * @param deltas {@link BalanceDeltas} to apply
+     * @return {@link List} of every {@link Account} in the deltas, in id order
+     */
+    private List<Account> applyDeltas(BalanceDeltas deltas) {
+        List<Account> returnList = new ArrayList<>();
+
+        // accounts are locked in id order so that concurrent writers can't deadlock
+        deltas.accountDeltas.forEach((accountId, delta) -> {
+            if (delta == 0 && !deltas.hasSnapshotChanges(accountId)) {
+                addIfFound(returnList, accountDAO.getAccount(accountId.toString()));
+            }
+            else {
+                addIfFound(returnList, accountDAO.applyBalanceDelta(accountId, delta));
+            }
+        });
+
+        deltas.snapshotDeltas.forEach((accountId, dateDeltas) ->
+                dateDeltas.forEach((date, delta) -> snapshotDAO.applyDelta(accountId, date, delta)));
+
+        return returnList;
+    }
+
+    /**
+     * Returns whether the update leaves every stored field of the transaction as it is
+     * @param previous {@link Transaction} as stored
+     * @param txToUpdate {@link Transaction} holding the update
+     * @return true if there is nothing to write
+     */
+    private boolean isUnchanged(Transaction previous, Transaction txToUpdate) {
+        return Objects.equals(previous.getAccountId(), txToUpdate.getAccountId())
+                && Objects.equals(previous.getName(), txToUpdate.getName())
+                && Objects.equals(previous.getDate(), txToUpdate.getDate())
+                && previous.getAmountCents() == txToUpdate.getAmountCents()
+                && previous.getType() == txToUpdate.getType()
+                && Objects.equals(previous.getNotes(), txToUpdate.getNotes());
+    }
+
+    /**
+     * Checks the creates and updates of a batch before anything is written
+     * @param batch {@link TxBatch} to check
+     * @throws IllegalArgumentException describing the first problem found
+     */
+    private void validate(TxBatch batch) {
+        for (Transaction txToAdd : batch.getCreates()) {
+            if (txToAdd.getId() != null) {
+                throw new IllegalArgumentException("Transaction " + txToAdd.getId() + " already has an id, include it in the updates instead");
+            }
+            if (txToAdd.getAccountId() == null) {
+                throw new IllegalArgumentException("Every transaction to create needs an account id");
+            }
+        }
+
+        for (Transaction txToUpdate : batch.getUpdates()) {
+            if (txToUpdate.getId() == null) {
+                throw new IllegalArgumentException("Every transaction to update needs an id");
+            }
+            if (txToUpdate.getAccountId() == null) {
+                throw new IllegalArgumentException("Transaction " + txToUpdate.getId() + " needs an account id");
+            }
+        }
+    }
+
+    /**
+     * Parses the provided transaction ids
+     * @param ids {@link List} of {@link String} ids
+     * @return {@link List} of {@link UUID}
+     * @throws IllegalArgumentException if any of the ids isn't a valid UUID
+     */
+    private List<UUID> parseIds(List<String> ids) {
+        List<UUID> returnList = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            returnList.add(UUID.fromString(id));
+        }
+
+        return returnList;
+    }
+
+    /**
+     * Returns the amount the transaction contributes to its account's balance
+     * @param tx {@link Transaction} to check
+     * @return the amount in cents if the transaction is CONFIRMED, otherwise 0
+     */
+    private long confirmedAmount(Transaction tx) {
+        if (Transaction.TransType.CONFIRMED.equals(tx.getType())) {
+            return tx.getAmountCents();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Adds the account to the list if it was found
+     * @param accounts {@link List} of {@link Account} to add to
+     * @param account {@link Account} to add (may be null)
+     */
+    private void addIfFound(List<Account> accounts, Account account) {
+        if (account != null) {
+            accounts.add(account);
+        }
+    }
+
+    /**
+     * Net change in the confirmed amounts of each account, and of each of its days, built up over one or
+     * more writes.  Accounts are kept in id order, as that is the order their rows are locked in
+     */
+    private static class BalanceDeltas {
+        /**
+         * Net change in cents for each account touched by the batch
+         */
+        private final Map<UUID, Long> accountDeltas = new TreeMap<>();
+
+        /**
+         * Net change in cents for each day of each account
+         */
+        private final Map<UUID, Map<LocalDate, Long>> snapshotDeltas = new HashMap<>();
+
+        /**
+         * Records a change in the confirmed amount of an account.  The account is recorded even if
+         * the amount is 0, so that it is returned with the rest.  Changes to the same day net out
+         * @param accountId {@link UUID} of the account (ignored if null)
+         * @param date {@link LocalDate} of the change (may be null)
+         * @param amount change in cents
+         */
+        void add(UUID accountId, LocalDate date, long amount) {
+            if (accountId == null) {
+                return;
+            }
+
+            accountDeltas.merge(accountId, amount, Long::sum);
+            if (date != null && amount != 0) {
+                snapshotDeltas.computeIfAbsent(accountId, id -> new HashMap<>()).merge(date, amount, Long::sum);
+            }
+        }
+
+        /**
+         * Returns whether any day of the account has a net change to apply to its snapshots
+         * @param accountId {@link UUID} of the account
+         * @return true if at least one day of the account changes
+         */
+        boolean hasSnapshotChanges(UUID accountId) {
+            Map<LocalDate, Long> dateDeltas = snapshotDeltas.get(accountId);
+
+            return dateDeltas != null && dateDeltas.values().stream().anyMatch(delta -> delta != 0);
+        }
+    }
+}
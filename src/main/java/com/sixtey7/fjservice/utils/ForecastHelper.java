@@ -0,0 +1,217 @@
+package com.sixtey7.fjservice.utils;
+
+import com.sixtey7.fjservice.model.Account;
+import com.sixtey7.fjservice.model.db.AccountDAO;
+import com.sixtey7.fjservice.model.db.TransactionDAO;
+import com.sixtey7.fjservice.model.transport.AccountForecast;
+import com.sixtey7.fjservice.model.transport.BalancePoint;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Helper class that projects account balances forward over the transactions that haven't been
+ * CONFIRMED yet (PLANNED, ESTIMATE, PENDING and FUTURE)
+ */
+@Dependent
+public class ForecastHelper {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(ForecastHelper.class);
+
+    /**
+     * DAO used for handling {@link com.sixtey7.fjservice.model.Transaction} objects
+     */
+    @Inject
+    TransactionDAO transDAO;
+
+    /**
+     * DAO for {@link Account} objects
+     */
+    @Inject
+    AccountDAO accountDAO;
+
+    /**
+     * Forecasts every account up to the end date, working through the accounts in parallel
+     * @param endDate {@link LocalDate} of the last day of the forecast
+     * @param threshold balance in cents to report the first drop below
+     * @param includeDaily whether to include the projected balance for each day it changes
+     * @return {@link List} of {@link AccountForecast}, one per account
+     */
+    public List<AccountForecast> forecastAll(LocalDate endDate, long threshold, boolean includeDaily) {
+        LOGGER.debug("Forecasting all accounts up to {}", endDate);
+        LocalDate today = validate(endDate);
+
+        Map<UUID, Series> seriesMap = loadSeries(null, endDate);
+        List<Account> accounts = accountDAO.getAllAccounts();
+
+        return accounts.parallelStream()
+                .map(acct -> forecast(acct, seriesMap.getOrDefault(acct.getId(), Series.EMPTY), today, threshold, includeDaily))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Forecasts a single account up to the end date
+     * @param accountId {@link String} containing the UUID of the account
+     * @param endDate {@link LocalDate} of the last day of the forecast
+     * @param threshold balance in cents to report the first drop below
+     * @param includeDaily whether to include the projected balance for each day it changes
+     * @return {@link AccountForecast} for the account (null if the account wasn't found)
+     */
+    public AccountForecast forecastAccount(String accountId, LocalDate endDate, long threshold, boolean includeDaily) {
+        LOGGER.debug("Forecasting account {} up to {}", accountId, endDate);
+        LocalDate today = validate(endDate);
+
+        Account acct = accountDAO.getAccount(accountId);
+        if (acct == null) {
+            LOGGER.warn("Failed to find account with id: {}", accountId);
+            return null;
+        }
+
+        Series series = loadSeries(acct.getId(), endDate).getOrDefault(acct.getId(), Series.EMPTY);
+        return forecast(acct, series, today, threshold, includeDaily);
+    }
+
+    /**
+     * Makes sure the end date is usable for a forecast
+     * @param endDate {@link LocalDate} of the last day of the forecast
+     * @return {@link LocalDate} for today, the first day of the forecast
+     */
+    private LocalDate validate(LocalDate endDate) {
+        LocalDate today = LocalDate.now();
+        if (endDate.isBefore(today)) {
+            throw new IllegalArgumentException("Forecast end date " + endDate + " is in the past");
+        }
+
+        return today;
+    }
+
+    /**
+     * Loads the outstanding transactions into a {@link Series} per account
+     * @param accountId {@link UUID} of the account to load (null for all accounts)
+     * @param endDate {@link LocalDate} of the last day of the forecast
+     * @return {@link Map} of account {@link UUID} to its {@link Series}
+     */
+    private Map<UUID, Series> loadSeries(UUID accountId, LocalDate endDate) {
+        Map<UUID, Series> seriesMap = new HashMap<>();
+
+        // rows arrive ordered by account then date, so each series is filled in date order
+        transDAO.streamUnconfirmed(accountId, endDate, row ->
+                seriesMap.computeIfAbsent((UUID) row[0], id -> new Series())
+                        .add((int) ((LocalDate) row[1]).toEpochDay(), (Long) row[2]));
+
+        return seriesMap;
+    }
+
+    /**
+     * Runs the forecast for a single account.  Outstanding transactions dated before today are
+     * expected to land today
+     * @param acct {@link Account} to forecast
+     * @param series {@link Series} of its outstanding transactions
+     * @param today {@link LocalDate} the forecast starts from
+     * @param threshold balance in cents to report the first drop below
+     * @param includeDaily whether to include the projected balance for each day it changes
+     * @return {@link AccountForecast} for the account
+     */
+    private AccountForecast forecast(Account acct, Series series, LocalDate today, long threshold, boolean includeDaily) {
+        int todayDay = (int) today.toEpochDay();
+        int[] days = series.days;
+        long[] amounts = series.amounts;
+
+        long startBalance = acct.getAmountCents();
+        long balance = startBalance;
+        long minBalance = startBalance;
+        int minDay = todayDay;
+        int belowDay = startBalance < threshold ? todayDay : Integer.MIN_VALUE;
+
+        AccountForecast returnForecast = new AccountForecast();
+
+        int start = 0;
+        while (start < series.size) {
+            int day = Math.max(days[start], todayDay);
+
+            int end = start + 1;
+            while (end < series.size && Math.max(days[end], todayDay) == day) {
+                end++;
+            }
+
+            balance += MoneyHelper.sum(amounts, start, end);
+            start = end;
+
+            if (balance < minBalance) {
+                minBalance = balance;
+                minDay = day;
+            }
+            if (belowDay == Integer.MIN_VALUE && balance < threshold) {
+                belowDay = day;
+            }
+            if (includeDaily) {
+                returnForecast.getBalances().add(new BalancePoint(LocalDate.ofEpochDay(day), balance));
+            }
+        }
+
+        returnForecast.setAccountId(acct.getId());
+        returnForecast.setName(acct.getName());
+        returnForecast.setStartBalance(MoneyHelper.toDecimal(startBalance));
+        returnForecast.setEndBalance(MoneyHelper.toDecimal(balance));
+        returnForecast.setMinBalance(MoneyHelper.toDecimal(minBalance));
+        returnForecast.setMinBalanceDate(LocalDate.ofEpochDay(minDay));
+        if (belowDay != Integer.MIN_VALUE) {
+            returnForecast.setFirstBelowThreshold(LocalDate.ofEpochDay(belowDay));
+        }
+
+        return returnForecast;
+    }
+
+    /**
+     * Outstanding transactions for a single account, held as parallel primitive arrays of the
+     * epoch day and amount in cents, in date order
+     */
+    private static class Series {
+
+        /**
+         * Shared series for accounts without any outstanding transactions
+         */
+        static final Series EMPTY = new Series();
+
+        /**
+         * Epoch day of each transaction
+         */
+        int[] days = new int[16];
+
+        /**
+         * Amount of each transaction in cents
+         */
+        long[] amounts = new long[16];
+
+        /**
+         * Number of transactions held
+         */
+        int size;
+
+        /**
+         * Adds a transaction to the end of the series, growing the arrays as needed
+         * @param day epoch day of the transaction
+         * @param amount amount of the transaction in cents
+         */
+        void add(int day, long amount) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+
+            days[size] = day;
+            amounts[size] = amount;
+            size++;
+        }
+    }
+}
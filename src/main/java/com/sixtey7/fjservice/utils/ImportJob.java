@@ -0,0 +1,218 @@
+package com.sixtey7.fjservice.utils;
+
+import com.sixtey7.fjservice.model.transport.ImportJobStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single import running in the background, which tracks its own progress
+ */
+public class ImportJob implements ImportProgress {
+
+    /**
+     * Most errors kept for a job, so a file full of bad rows can't use up the heap
+     */
+    private static final int MAX_ERRORS = 100;
+
+    /**
+     * Id of the job
+     */
+    private final UUID id = UUID.randomUUID();
+
+    /**
+     * What the job is importing
+     */
+    private final String description;
+
+    /**
+     * When the job was submitted
+     */
+    private final Instant submittedAt = Instant.now();
+
+    /**
+     * When the job started running
+     */
+    private volatile Instant startedAt;
+
+    /**
+     * When the job finished
+     */
+    private volatile Instant finishedAt;
+
+    /**
+     * Stage the job has reached
+     */
+    private volatile Phase phase = Phase.QUEUED;
+
+    /**
+     * Whether cancellation has been requested
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Number of rows parsed so far
+     */
+    private final AtomicLong rowsParsed = new AtomicLong();
+
+    /**
+     * Number of rows written to the database so far
+     */
+    private final AtomicLong rowsPersisted = new AtomicLong();
+
+    /**
+     * Errors hit by the job
+     */
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Handle on the job in the executor, used to drop it from the queue if cancelled before it starts
+     */
+    private volatile Future<?> future;
+
+    /**
+     * Cleanup to run once the job finishes, however it finishes
+     */
+    private final AtomicReference<Runnable> cleanup = new AtomicReference<>();
+
+    /**
+     * Constructor
+     * @param description {@link String} describing what the job is importing
+     */
+    public ImportJob(String description) {
+        this.description = description;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    void setCleanup(Runnable cleanup) {
+        this.cleanup.set(cleanup);
+    }
+
+    /**
+     * Returns whether the job has finished, one way or another
+     * @return true if the job is completed, failed or cancelled
+     */
+    public boolean isFinished() {
+        return phase == Phase.COMPLETED || phase == Phase.FAILED || phase == Phase.CANCELLED;
+    }
+
+    /**
+     * Asks the job to stop.  A queued job is dropped straight away, a running job stops the next
+     * time it checks, rolling back whatever hasn't been committed
+     */
+    public void cancel() {
+        cancelled = true;
+
+        if (phase == Phase.QUEUED && future != null && future.cancel(false)) {
+            finish(Phase.CANCELLED);
+        }
+    }
+
+    /**
+     * Records that the job has started running
+     */
+    void start() {
+        startedAt = Instant.now();
+        phase = Phase.PARSING;
+    }
+
+    /**
+     * Records that the job has stopped
+     * @param finalPhase {@link Phase} the job finished in
+     */
+    void finish(Phase finalPhase) {
+        finishedAt = Instant.now();
+        phase = finalPhase;
+
+        Runnable toRun = cleanup.getAndSet(null);
+        if (toRun != null) {
+            toRun.run();
+        }
+    }
+
+    @Override
+    public void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    @Override
+    public void addParsed(long rows) {
+        rowsParsed.addAndGet(rows);
+    }
+
+    @Override
+    public void addPersisted(long rows) {
+        rowsPersisted.addAndGet(rows);
+    }
+
+    @Override
+    public void addError(String error) {
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(error);
+            }
+        }
+    }
+
+    @Override
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Import " + id + " was cancelled");
+        }
+    }
+
+    /**
+     * Takes a snapshot of the job's state to send back to the client
+     * @return {@link ImportJobStatus} for the job
+     */
+    public ImportJobStatus toStatus() {
+        ImportJobStatus status = new ImportJobStatus();
+        status.setId(id.toString());
+        status.setDescription(description);
+        status.setPhase(phase.toString());
+        status.setSubmittedAt(submittedAt.toString());
+        status.setCancelRequested(cancelled);
+        status.setRowsParsed(rowsParsed.get());
+        status.setRowsPersisted(rowsPersisted.get());
+
+        Instant started = startedAt;
+        Instant finished = finishedAt;
+        if (started != null) {
+            status.setStartedAt(started.toString());
+
+            long elapsedMillis = Math.max(1, Duration.between(started, finished == null ? Instant.now() : finished).toMillis());
+            status.setRowsPerSecond(rowsPersisted.get() * 1000L / elapsedMillis);
+        }
+        if (finished != null) {
+            status.setFinishedAt(finished.toString());
+        }
+
+        synchronized (errors) {
+            status.getErrors().addAll(errors);
+        }
+
+        return status;
+    }
+}
@@ -0,0 +1,220 @@
+package com.sixtey7.fjservice.utils;
+
+import com.sixtey7.fjservice.model.converter.CSVParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs imports in the background on a small bounded pool, so that large imports don't tie up
+ * request threads, and keeps track of the jobs so their progress can be checked
+ */
+@ApplicationScoped
+public class ImportJobManager {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(ImportJobManager.class);
+
+    /**
+     * Runs each job inside a request context
+     */
+    @Inject
+    ImportJobRunner runner;
+
+    /**
+     * Number of imports that can run at the same time
+     */
+    @ConfigProperty(name = "fjservice.import.threads", defaultValue = "2")
+    int threads;
+
+    /**
+     * Number of imports that can wait for a thread before new ones are turned away
+     */
+    @ConfigProperty(name = "fjservice.import.queue-size", defaultValue = "10")
+    int queueSize;
+
+    /**
+     * Number of finished jobs to remember
+     */
+    @ConfigProperty(name = "fjservice.import.retained-jobs", defaultValue = "50")
+    int retainedJobs;
+
+    /**
+     * Imports spooled data in the background
+     */
+    @FunctionalInterface
+    public interface Work {
+        /**
+         * Imports the data
+         * @param csvParser {@link CSVParser} belonging to the job, as the one of the submitting request is gone by the time it runs
+         * @param data {@link InputStream} containing the data to import
+         * @param progress {@link ImportProgress} to report to
+         */
+        void importData(CSVParser csvParser, InputStream data, ImportProgress progress);
+    }
+
+    /**
+     * All of the jobs that are queued, running or recently finished
+     */
+    private final Map<UUID, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Executor the jobs run on
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Builds the executor once the configuration has been injected
+     */
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "import-job-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Stops the running jobs when the application shuts down
+     */
+    @PreDestroy
+    void shutdown() {
+        jobs.values().forEach(ImportJob::cancel);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues an import to run in the background
+     * @param description {@link String} describing what is being imported
+     * @param work {@link BiConsumer} that performs the import with the job's own {@link CSVParser}, reporting to the provided {@link ImportProgress}
+     * @return {@link ImportJob} that has been queued
+     * @throws RejectedExecutionException if too many imports are already queued
+     */
+    public ImportJob submit(String description, BiConsumer<CSVParser, ImportProgress> work) {
+        pruneFinishedJobs();
+
+        ImportJob job = new ImportJob(description);
+        job.setFuture(executor.submit(() -> runner.run(job, work)));
+        jobs.put(job.getId(), job);
+
+        LOGGER.info("Queued import job {}: {}", job.getId(), description);
+        return job;
+    }
+
+    /**
+     * Spools the provided data to a temporary file and queues an import that reads it back, so the
+     * request can return before the data has been imported.  The file is removed once the job finishes
+     * @param description {@link String} describing what is being imported
+     * @param data {@link InputStream} containing the data to import
+     * @param work {@link Work} that imports the data
+     * @return {@link ImportJob} that has been queued
+     * @throws IOException if the data couldn't be spooled
+     * @throws RejectedExecutionException if too many imports are already queued
+     */
+    public ImportJob submit(String description, InputStream data, Work work) throws IOException {
+        Path spoolFile = Files.createTempFile("fjservice-import-", ".csv");
+
+        try {
+            Files.copy(data, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+            LOGGER.debug("Spooled {} bytes to {}", Files.size(spoolFile), spoolFile);
+
+            ImportJob job = submit(description, (csvParser, progress) -> {
+                try (InputStream spooled = Files.newInputStream(spoolFile)) {
+                    work.importData(csvParser, spooled, progress);
+                }
+                catch (IOException ioe) {
+                    throw new UncheckedIOException("Failed to read the spooled import data", ioe);
+                }
+            });
+            job.setCleanup(() -> deleteSpoolFile(spoolFile));
+
+            // the job may have finished before the cleanup was set
+            if (job.isFinished()) {
+                deleteSpoolFile(spoolFile);
+            }
+
+            return job;
+        }
+        catch (IOException | RuntimeException ex) {
+            deleteSpoolFile(spoolFile);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the indicated job
+     * @param jobId {@link UUID} of the job
+     * @return {@link ImportJob} (null if not found)
+     */
+    public ImportJob getJob(UUID jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Returns all of the known jobs, newest first
+     * @return {@link List} of {@link ImportJob}
+     */
+    public List<ImportJob> getJobs() {
+        List<ImportJob> returnList = new ArrayList<>(jobs.values());
+        returnList.sort(Comparator.comparing(ImportJob::getSubmittedAt).reversed());
+
+        return returnList;
+    }
+
+    /**
+     * Removes a spooled import file
+     * @param spoolFile {@link Path} of the file to remove
+     */
+    private void deleteSpoolFile(Path spoolFile) {
+        try {
+            Files.deleteIfExists(spoolFile);
+        }
+        catch (IOException ioe) {
+            LOGGER.warn("Failed to remove spooled import data {}", spoolFile, ioe);
+        }
+    }
+
+    /**
+     * Drops the oldest finished jobs once there are more than should be kept
+     */
+    private void pruneFinishedJobs() {
+        List<ImportJob> finished = new ArrayList<>();
+        for (ImportJob job : jobs.values()) {
+            if (job.isFinished()) {
+                finished.add(job);
+            }
+        }
+
+        if (finished.size() > retainedJobs) {
+            finished.sort(Comparator.comparing(ImportJob::getSubmittedAt));
+            finished.subList(0, finished.size() - retainedJobs).forEach(job -> jobs.remove(job.getId()));
+        }
+    }
+}
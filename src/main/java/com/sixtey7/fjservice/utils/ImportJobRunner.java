@@ -0,0 +1,72 @@
+package com.sixtey7.fjservice.utils;
+
+import com.sixtey7.fjservice.model.converter.CSVParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.concurrent.CancellationException;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs import jobs on the executor threads, giving each one a request context so that the
+ * entity managers behave the same way they do on a request thread
+ */
+@ApplicationScoped
+public class ImportJobRunner {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(ImportJobRunner.class);
+
+    /**
+     * Source of the parser each job imports with.  A job can't use the parser of the request that
+     * submitted it, as that is destroyed when the request ends
+     */
+    @Inject
+    Instance<CSVParser> csvParsers;
+
+    /**
+     * Runs the job, recording how it finished.  The job is always finished, and its cleanup run,
+     * however the work ends
+     * @param job {@link ImportJob} to run
+     * @param work {@link BiConsumer} that performs the import with its own {@link CSVParser}, reporting to the provided {@link ImportProgress}
+     */
+    @ActivateRequestContext
+    public void run(ImportJob job, BiConsumer<CSVParser, ImportProgress> work) {
+        LOGGER.info("Starting import job {}", job.getId());
+        job.start();
+
+        ImportProgress.Phase finalPhase = ImportProgress.Phase.FAILED;
+        CSVParser csvParser = null;
+        try {
+            job.checkCancelled();
+            csvParser = csvParsers.get();
+            work.accept(csvParser, job);
+
+            finalPhase = ImportProgress.Phase.COMPLETED;
+            LOGGER.info("Import job {} completed", job.getId());
+        }
+        catch (CancellationException ce) {
+            finalPhase = ImportProgress.Phase.CANCELLED;
+            LOGGER.info("Import job {} was cancelled", job.getId());
+        }
+        catch (RuntimeException re) {
+            LOGGER.error("Import job {} failed", job.getId(), re);
+            job.addError(re.getMessage());
+        }
+        catch (Error e) {
+            LOGGER.error("Import job {} failed", job.getId(), e);
+            job.addError(e.toString());
+            throw e;
+        }
+        finally {
+            if (csvParser != null) {
+                csvParsers.destroy(csvParser);
+            }
+            job.finish(finalPhase);
+        }
+    }
+}
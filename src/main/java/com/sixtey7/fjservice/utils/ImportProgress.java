@@ -0,0 +1,77 @@
+package com.sixtey7.fjservice.utils;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives progress updates from a running import and lets it know when it should stop
+ */
+public interface ImportProgress {
+
+    /**
+     * Progress that goes nowhere, used when an import runs on the request thread
+     */
+    ImportProgress NONE = new ImportProgress() {
+        @Override
+        public void setPhase(Phase phase) {
+        }
+
+        @Override
+        public void addParsed(long rows) {
+        }
+
+        @Override
+        public void addPersisted(long rows) {
+        }
+
+        @Override
+        public void addError(String error) {
+        }
+
+        @Override
+        public void checkCancelled() {
+        }
+    };
+
+    /**
+     * Enumeration for the stages an import goes through
+     */
+    enum Phase {
+        QUEUED,
+        PARSING,
+        PERSISTING,
+        FINALIZING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    /**
+     * Records the stage the import has reached
+     * @param phase {@link Phase} the import is now in
+     */
+    void setPhase(Phase phase);
+
+    /**
+     * Records rows that have been parsed
+     * @param rows the number of rows
+     */
+    void addParsed(long rows);
+
+    /**
+     * Records rows that have been written to the database
+     * @param rows the number of rows
+     */
+    void addPersisted(long rows);
+
+    /**
+     * Records an error that didn't stop the import
+     * @param error {@link String} describing the error
+     */
+    void addError(String error);
+
+    /**
+     * Stops the import if it has been cancelled
+     * @throws CancellationException if the import has been cancelled
+     */
+    void checkCancelled();
+}
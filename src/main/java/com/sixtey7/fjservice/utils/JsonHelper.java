@@ -0,0 +1,128 @@
+package com.sixtey7.fjservice.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Holds the single {@link ObjectMapper} used to write REST responses, so its serializer caches are
+ * built once rather than on every request, and streams lists straight to the response one element
+ * at a time, either as a JSON array or as newline delimited JSON (NDJSON)
+ */
+@ApplicationScoped
+public class JsonHelper {
+
+    /**
+     * Media type for newline delimited JSON, one object per line
+     */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /**
+     * {@link MediaType} for newline delimited JSON
+     */
+    public static final MediaType APPLICATION_NDJSON_TYPE = MediaType.valueOf(APPLICATION_NDJSON);
+
+    /**
+     * Mapper shared by every request, which is thread safe once configured
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Constructor
+     */
+    public JsonHelper() {
+        mapper = new ObjectMapper();
+
+        // the response stream belongs to JAX-RS, and flushing after every element defeats the buffering
+        mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        mapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Returns whether the client asked for newline delimited JSON
+     * @param headers {@link HttpHeaders} of the request
+     * @return true if NDJSON is one of the acceptable media types
+     */
+    public boolean wantsNdjson(HttpHeaders headers) {
+        for (MediaType acceptable : headers.getAcceptableMediaTypes()) {
+            if (!acceptable.isWildcardType() && !acceptable.isWildcardSubtype() && acceptable.isCompatible(APPLICATION_NDJSON_TYPE)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the media type a list is written as
+     * @param ndjson whether the list is written as NDJSON
+     * @return {@link MediaType} of the response
+     */
+    public MediaType listType(boolean ndjson) {
+        return ndjson ? APPLICATION_NDJSON_TYPE : MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    /**
+     * Streams the provided items to the response
+     * @param items {@link Iterable} of the items to write
+     * @param ndjson whether to write NDJSON rather than a JSON array
+     * @param <T> type of the items
+     * @return {@link StreamingOutput} that writes the items
+     */
+    public <T> StreamingOutput streamList(Iterable<T> items, boolean ndjson) {
+        return streamList(items::forEach, ndjson);
+    }
+
+    /**
+     * Streams the items handed out by the source to the response as they arrive, which lets a
+     * database cursor be written out without ever holding the full result
+     * @param source {@link Consumer} that hands each item to the provided writer
+     * @param ndjson whether to write NDJSON rather than a JSON array
+     * @param <T> type of the items
+     * @return {@link StreamingOutput} that writes the items
+     */
+    public <T> StreamingOutput streamList(Consumer<Consumer<T>> source, boolean ndjson) {
+        return output -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+                if (ndjson) {
+                    // each value goes on its own line rather than being separated by a space
+                    generator.setRootValueSeparator(null);
+                }
+                else {
+                    generator.writeStartArray();
+                }
+
+                source.accept(item -> {
+                    try {
+                        mapper.writeValue(generator, item);
+                        if (ndjson) {
+                            generator.writeRaw('\n');
+                        }
+                    }
+                    catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                });
+
+                if (!ndjson) {
+                    generator.writeEndArray();
+                }
+            }
+            catch (UncheckedIOException uioe) {
+                throw uioe.getCause();
+            }
+        };
+    }
+}
@@ -0,0 +1,169 @@
+package com.sixtey7.fjservice.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Helper class for working with monetary amounts, which are stored as a whole number of cents
+ */
+public final class MoneyHelper {
+
+    /**
+     * Number of cents in a dollar
+     */
+    private static final int CENTS_PER_DOLLAR = 100;
+
+    /**
+     * Number of decimal places in a dollar amount
+     */
+    private static final int DECIMAL_PLACES = 2;
+
+    private MoneyHelper() { }
+
+    /**
+     * Converts an exact dollar amount to cents, rounding half up to the nearest cent
+     * @param dollars {@link BigDecimal} holding the amount in dollars
+     * @return the amount in cents
+     * @throws ArithmeticException if the amount doesn't fit in a long
+     */
+    public static long toCents(BigDecimal dollars) {
+        return dollars.setScale(DECIMAL_PLACES, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts an amount in cents to an exact dollar amount with two decimal places, which is what
+     * clients send and receive
+     * @param cents the amount in cents
+     * @return {@link BigDecimal} holding the amount in dollars
+     */
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, DECIMAL_PLACES);
+    }
+
+    /**
+     * Formats an amount in cents as a plain decimal string (ie 1234 becomes 12.34)
+     * @param cents the amount in cents
+     * @return {@link String} containing the formatted amount
+     */
+    public static String format(long cents) {
+        StringBuilder sb = new StringBuilder(16);
+        long absCents = Math.abs(cents);
+
+        if (cents < 0) {
+            sb.append('-');
+        }
+        sb.append(absCents / CENTS_PER_DOLLAR);
+        sb.append('.');
+
+        long remainder = absCents % CENTS_PER_DOLLAR;
+        if (remainder < 10) {
+            sb.append('0');
+        }
+        sb.append(remainder);
+
+        return sb.toString();
+    }
+
+    /**
+     * Parses an amount in cents straight out of the characters of a monetary value such as
+     * "$12.34", "-3.5" or "7", without creating any intermediate strings.  Surrounding whitespace
+     * is ignored and anything beyond two decimal places is rounded to the nearest cent
+     * @param chars {@link CharSequence} containing the value
+     * @param start index of the first character of the value
+     * @param end index after the last character of the value
+     * @return the amount in cents
+     * @throws NumberFormatException if the value is not a valid amount
+     */
+    public static long parseCents(CharSequence chars, int start, int end) {
+        while (start < end && Character.isWhitespace(chars.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(chars.charAt(end - 1))) {
+            end--;
+        }
+
+        int pos = start;
+        boolean negative = false;
+
+        if (pos < end && (chars.charAt(pos) == '-' || chars.charAt(pos) == '+')) {
+            negative = chars.charAt(pos) == '-';
+            pos++;
+        }
+        if (pos < end && chars.charAt(pos) == '$') {
+            pos++;
+        }
+
+        long dollars = 0;
+        int digits = 0;
+        while (pos < end && chars.charAt(pos) != '.') {
+            dollars = dollars * 10 + digitAt(chars, pos, start, end);
+            digits++;
+            pos++;
+        }
+
+        long cents = 0;
+        if (pos < end) {
+            // skip the decimal point
+            pos++;
+
+            int decimals = 0;
+            while (pos < end) {
+                int digit = digitAt(chars, pos, start, end);
+                if (decimals < 2) {
+                    cents = cents * 10 + digit;
+                }
+                else if (decimals == 2 && digit >= 5) {
+                    cents++;
+                }
+                decimals++;
+                digits++;
+                pos++;
+            }
+
+            if (decimals == 1) {
+                cents *= 10;
+            }
+        }
+
+        if (digits == 0) {
+            throw new NumberFormatException("No amount in " + chars.subSequence(start, end));
+        }
+
+        long total = dollars * CENTS_PER_DOLLAR + cents;
+        return negative ? -total : total;
+    }
+
+    /**
+     * Sums a range of amounts
+     * @param amounts array of amounts in cents
+     * @param from index of the first amount to include
+     * @param to index after the last amount to include
+     * @return the total in cents
+     */
+    public static long sum(long[] amounts, int from, int to) {
+        long total = 0;
+        for (int pos = from; pos < to; pos++) {
+            total += amounts[pos];
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns the value of the digit at the indicated position
+     * @param chars {@link CharSequence} containing the value
+     * @param pos index of the digit
+     * @param start index of the first character of the value, for the error message
+     * @param end index after the last character of the value, for the error message
+     * @return the value of the digit
+     * @throws NumberFormatException if the character is not a digit
+     */
+    private static int digitAt(CharSequence chars, int pos, int start, int end) {
+        char thisChar = chars.charAt(pos);
+        if (thisChar < '0' || thisChar > '9') {
+            throw new NumberFormatException("Invalid amount " + chars.subSequence(start, end));
+        }
+
+        return thisChar - '0';
+    }
+}
@@ -0,0 +1,43 @@
+package com.sixtey7.fjservice.utils;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Helper class used to run work when the current database transaction completes
+ */
+@ApplicationScoped
+public class TxSyncHelper {
+
+    /**
+     * Registry used to hook into the current transaction
+     */
+    @Inject
+    TransactionSynchronizationRegistry txSyncRegistry;
+
+    /**
+     * Runs the provided action straight away and, if a transaction is active, again once it has
+     * completed.  Used to invalidate caches so that a reader that refills the cache before the
+     * commit can't leave stale data behind
+     * @param action {@link Runnable} to run
+     */
+    public void runNowAndAfterCompletion(Runnable action) {
+        action.run();
+
+        if (txSyncRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            txSyncRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+}
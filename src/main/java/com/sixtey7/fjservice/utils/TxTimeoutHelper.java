@@ -0,0 +1,61 @@
+package com.sixtey7.fjservice.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.SystemException;
+import javax.transaction.TransactionManager;
+import java.util.function.Supplier;
+
+/**
+ * Helper class used to give long running database transactions, such as a full import, a different
+ * timeout to the default one every other transaction gets
+ */
+@ApplicationScoped
+public class TxTimeoutHelper {
+
+    //Create a logger for the class
+    private static final Logger LOGGER = LogManager.getLogger(TxTimeoutHelper.class);
+
+    /**
+     * Transaction manager the timeout is set on
+     */
+    @Inject
+    TransactionManager transactionManager;
+
+    /**
+     * Runs the work with the provided timeout applied to the transactions it begins, then puts the default
+     * timeout back.  The timeout is only picked up when a transaction begins, so the work needs to call a
+     * {@code @Transactional} method on another bean rather than be running in a transaction already
+     * @param timeoutSeconds timeout in seconds (0 for the default)
+     * @param work {@link Supplier} to run
+     * @param <T> type returned by the work
+     * @return the value returned by the work
+     */
+    public <T> T callWithTimeout(int timeoutSeconds, Supplier<T> work) {
+        try {
+            if (transactionManager.getStatus() != Status.STATUS_NO_TRANSACTION) {
+                LOGGER.warn("A transaction is already active, the timeout of {} seconds won't apply to it", timeoutSeconds);
+            }
+            transactionManager.setTransactionTimeout(timeoutSeconds);
+        }
+        catch (SystemException se) {
+            throw new IllegalStateException("Failed to set the transaction timeout", se);
+        }
+
+        try {
+            return work.get();
+        }
+        finally {
+            try {
+                transactionManager.setTransactionTimeout(0);
+            }
+            catch (SystemException se) {
+                LOGGER.warn("Failed to put back the default transaction timeout", se);
+            }
+        }
+    }
+}
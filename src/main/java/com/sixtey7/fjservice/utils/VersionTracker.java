@@ -0,0 +1,161 @@
+package com.sixtey7.fjservice.utils;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.core.EntityTag;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps version counters for the accounts table, the transactions table and the transactions of
+ * each account, which the DAOs bump on every write.  The listing endpoints hand the versions out
+ * as ETags so that a client polling for changes can be answered with a 304 without running any
+ * query.
+ * <p>
+ * Every version is taken from a single clock, so they only ever go up.  The clock starts again
+ * when the service restarts, so the tags also carry the time the service started
+ */
+@ApplicationScoped
+public class VersionTracker {
+
+    /**
+     * Used to bump the versions again once the writing transaction completes
+     */
+    @Inject
+    TxSyncHelper txSyncHelper;
+
+    /**
+     * Identifies this run of the service, so tags from before a restart never match
+     */
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    /**
+     * Source of every version number
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Version of the accounts table
+     */
+    private final AtomicLong accountsVersion = new AtomicLong();
+
+    /**
+     * Version of the transactions table
+     */
+    private final AtomicLong transactionsVersion = new AtomicLong();
+
+    /**
+     * Lowest version of the transactions of any account, raised when every account changes at once
+     */
+    private final AtomicLong accountTxFloor = new AtomicLong();
+
+    /**
+     * Version of the transactions of each account written since the floor was last raised
+     */
+    private final Map<UUID, Long> accountTxVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Records that the accounts table has been written to
+     */
+    public void accountsChanged() {
+        txSyncHelper.runNowAndAfterCompletion(() -> advance(accountsVersion));
+    }
+
+    /**
+     * Records that the transactions of the indicated account have been written to
+     * @param accountId {@link UUID} of the account (ignored if null)
+     */
+    public void transactionsChanged(UUID accountId) {
+        if (accountId != null) {
+            txSyncHelper.runNowAndAfterCompletion(() -> {
+                long version = advance(transactionsVersion);
+                accountTxVersions.merge(accountId, version, Math::max);
+            });
+        }
+    }
+
+    /**
+     * Records that the transactions of the indicated accounts have been written to
+     * @param accountIds {@link Collection} of account {@link UUID}
+     */
+    public void transactionsChanged(Collection<UUID> accountIds) {
+        txSyncHelper.runNowAndAfterCompletion(() -> {
+            long version = advance(transactionsVersion);
+            for (UUID accountId : accountIds) {
+                if (accountId != null) {
+                    accountTxVersions.merge(accountId, version, Math::max);
+                }
+            }
+        });
+    }
+
+    /**
+     * Records that the transactions of every account may have changed, after an import or a delete all
+     */
+    public void allTransactionsChanged() {
+        txSyncHelper.runNowAndAfterCompletion(() -> {
+            long floor = accountTxFloor.accumulateAndGet(advance(transactionsVersion), Math::max);
+
+            // entries below the floor no longer count.  Each is only removed if it still holds the
+            // value tested, so a write to the account that races with this one isn't lost
+            accountTxVersions.values().removeIf(version -> version <= floor);
+        });
+    }
+
+    /**
+     * Returns the tag for the current version of the accounts table
+     * @param variant {@link String} naming the representation being tagged (empty for the default)
+     * @return {@link EntityTag} for the accounts
+     */
+    public EntityTag accountsTag(String variant) {
+        return toTag(accountsVersion.get(), variant);
+    }
+
+    /**
+     * Returns the tag for the current version of the transactions table
+     * @param variant {@link String} naming the representation being tagged (empty for the default)
+     * @return {@link EntityTag} for the transactions
+     */
+    public EntityTag transactionsTag(String variant) {
+        return toTag(transactionsVersion.get(), variant);
+    }
+
+    /**
+     * Returns the tag for the current version of the transactions of the indicated account
+     * @param accountId {@link UUID} of the account
+     * @param variant {@link String} naming the representation being tagged (empty for the default)
+     * @return {@link EntityTag} for the transactions of the account
+     */
+    public EntityTag accountTransactionsTag(UUID accountId, String variant) {
+        // the entry is read first, as it is only removed once the floor has passed it
+        Long version = accountTxVersions.get(accountId);
+        long floor = accountTxFloor.get();
+
+        return toTag(version == null ? floor : Math.max(floor, version), variant);
+    }
+
+    /**
+     * Moves the provided counter on to the next version from the clock
+     * @param counter {@link AtomicLong} to move on
+     * @return the new version
+     */
+    private long advance(AtomicLong counter) {
+        long version = clock.incrementAndGet();
+        counter.accumulateAndGet(version, Math::max);
+        return version;
+    }
+
+    /**
+     * Builds the tag for a version.  The tags are weak, as the same version can be written with the
+     * rows in a different order
+     * @param version the version being tagged
+     * @param variant {@link String} naming the representation being tagged (empty for the default)
+     * @return {@link EntityTag} for the version
+     */
+    private EntityTag toTag(long version, String variant) {
+        return new EntityTag(epoch + "-" + version + variant, true);
+    }
+}
@@ -0,0 +1,21 @@
+-- Initial schema, matching what Hibernate generated from the entities before migrations were introduced.
+-- Existing databases are baselined at this version so the statements only run against an empty schema.
+CREATE TABLE IF NOT EXISTS accounts (
+    id uuid NOT NULL,
+    amount float4,
+    dynamic boolean,
+    name varchar(255),
+    notes varchar(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS transactions (
+    id uuid NOT NULL,
+    account_id uuid,
+    amount float4,
+    date date,
+    name varchar(255),
+    notes varchar(255),
+    type int4,
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,8 @@
+-- Account listings and per-account balance queries, ordered the same way as the keyset pagination
+CREATE INDEX IF NOT EXISTS transactions_account_date_id_idx ON transactions (account_id, date, id);
+
+-- Date range queries (betweenDates / newerThan) and keyset pagination over all transactions
+CREATE INDEX IF NOT EXISTS transactions_date_id_idx ON transactions (date, id);
+
+-- Confirmed balance sums; type is stored by ordinal and 3 is CONFIRMED
+CREATE INDEX IF NOT EXISTS transactions_confirmed_account_idx ON transactions (account_id, amount) WHERE type = 3;
@@ -0,0 +1,11 @@
+-- Store amounts as a whole number of cents rather than a float4 number of dollars.
+-- Existing values are widened to float8 before scaling so that rounding happens once, on the cent.
+ALTER TABLE accounts
+    ALTER COLUMN amount TYPE bigint USING CAST(ROUND(CAST(COALESCE(amount, 0) AS float8) * 100) AS bigint),
+    ALTER COLUMN amount SET DEFAULT 0,
+    ALTER COLUMN amount SET NOT NULL;
+
+ALTER TABLE transactions
+    ALTER COLUMN amount TYPE bigint USING CAST(ROUND(CAST(COALESCE(amount, 0) AS float8) * 100) AS bigint),
+    ALTER COLUMN amount SET DEFAULT 0,
+    ALTER COLUMN amount SET NOT NULL;
@@ -0,0 +1,23 @@
+-- Confirmed balance of each account at the end of every day it had a CONFIRMED transaction,
+-- covering all transactions dated up to the horizon.  Anything after the horizon is summed on
+-- the fly, so the horizon only moves forward when the snapshots are rebuilt
+CREATE TABLE IF NOT EXISTS account_balance_snapshots (
+    account_id uuid NOT NULL,
+    snapshot_date date NOT NULL,
+    balance bigint NOT NULL,
+    PRIMARY KEY (account_id, snapshot_date)
+);
+
+CREATE TABLE IF NOT EXISTS balance_snapshot_horizon (
+    id int4 PRIMARY KEY CHECK (id = 1),
+    horizon date NOT NULL
+);
+
+-- type is stored by ordinal and 3 is CONFIRMED
+INSERT INTO account_balance_snapshots (account_id, snapshot_date, balance)
+SELECT account_id, date, SUM(SUM(amount)) OVER (PARTITION BY account_id ORDER BY date)
+FROM transactions
+WHERE type = 3 AND date IS NOT NULL AND account_id IS NOT NULL AND date <= CURRENT_DATE
+GROUP BY account_id, date;
+
+INSERT INTO balance_snapshot_horizon (id, horizon) VALUES (1, CURRENT_DATE);
@@ -0,0 +1,7 @@
+-- Undated transactions are paged before the dated ones, so the keyset pagination indexes are
+-- rebuilt with the nulls first to keep matching the (date NULLS FIRST, id) ordering
+DROP INDEX IF EXISTS transactions_account_date_id_idx;
+CREATE INDEX IF NOT EXISTS transactions_account_date_id_idx ON transactions (account_id, date NULLS FIRST, id);
+
+DROP INDEX IF EXISTS transactions_date_id_idx;
+CREATE INDEX IF NOT EXISTS transactions_date_id_idx ON transactions (date NULLS FIRST, id);
@@ -0,0 +1,81 @@
+package com.sixtey7.fjservice.model.converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link CSVTokenizer} and {@link CSVRecordReader}, covering the raw rows written by older
+ * exports alongside the quoted rows written now
+ */
+public class CSVTokenizerTest {
+
+    /**
+     * Raw quotes in a name or notes field don't open a quoted field
+     */
+    @Test
+    public void rawQuotesAreComplete() {
+        assertFalse(CSVTokenizer.isIncomplete("TV,500.00,,Checking,2020-03-01,CONFIRMED,32\" TV"));
+        assertFalse(CSVTokenizer.isIncomplete("12\" sub,40.00,,Checking,2020-03-02,CONFIRMED,"));
+        assertFalse(CSVTokenizer.isIncomplete("Quote,1.00,,Checking,2020-03-03,CONFIRMED,said \"hi"));
+    }
+
+    /**
+     * Quoted fields are complete once closed, and doubled quotes inside them don't close them
+     */
+    @Test
+    public void quotedFields() {
+        assertFalse(CSVTokenizer.isIncomplete("\"TV, big\",500.00,,Checking,2020-03-01,CONFIRMED,\"32\"\" TV\""));
+        assertFalse(CSVTokenizer.isIncomplete("\"\"\"\",1.00,,Checking,2020-03-01,CONFIRMED,"));
+        assertTrue(CSVTokenizer.isIncomplete("TV,500.00,,Checking,2020-03-01,CONFIRMED,\"first line"));
+        assertTrue(CSVTokenizer.isIncomplete("TV,500.00,,Checking,2020-03-01,CONFIRMED,\"32\"\" TV"));
+        assertTrue(CSVTokenizer.isIncomplete("\"TV,500.00"));
+    }
+
+    /**
+     * Raw and quoted fields are split the same way the records are read
+     */
+    @Test
+    public void tokenizeRawAndQuoted() {
+        CSVTokenizer tokenizer = new CSVTokenizer();
+
+        assertEquals(7, tokenizer.tokenize("TV,500.00,,Checking,2020-03-01,CONFIRMED,32\" TV, wall mount", 7));
+        assertEquals("TV", tokenizer.getString(0));
+        assertEquals("32\" TV, wall mount", tokenizer.getString(6));
+
+        assertEquals(7, tokenizer.tokenize("\"TV, big\",500.00,,Checking,2020-03-01,CONFIRMED,\"32\"\" TV\"", 7));
+        assertEquals("TV, big", tokenizer.getString(0));
+        assertEquals(50000L, tokenizer.getCents(1));
+        assertTrue(tokenizer.isEmpty(2));
+        assertEquals("32\" TV", tokenizer.getString(6));
+    }
+
+    /**
+     * Rows with raw quotes stay on their own line, and quoted line breaks join the lines they span
+     */
+    @Test
+    public void readRecords() {
+        String data = "TV,500.00,,Checking,2020-03-01,CONFIRMED,32\" TV\n"
+                + "Mount,50.00,,Checking,2020-03-02,CONFIRMED,\"for the 32\"\" TV\n"
+                + "second line\"\n"
+                + "Cable,5.00,,Checking,2020-03-03,CONFIRMED,\n";
+        CSVRecordReader reader = new CSVRecordReader(new BufferedReader(new StringReader(data)));
+
+        assertEquals("TV,500.00,,Checking,2020-03-01,CONFIRMED,32\" TV", reader.next());
+        assertEquals(1, reader.getLineNumber());
+
+        assertEquals("Mount,50.00,,Checking,2020-03-02,CONFIRMED,\"for the 32\"\" TV\nsecond line\"", reader.next());
+        assertEquals(2, reader.getLineNumber());
+
+        assertEquals("Cable,5.00,,Checking,2020-03-03,CONFIRMED,", reader.next());
+        assertEquals(4, reader.getLineNumber());
+
+        assertNull(reader.next());
+    }
+}